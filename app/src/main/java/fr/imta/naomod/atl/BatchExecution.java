@@ -0,0 +1,309 @@
+package fr.imta.naomod.atl;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeoutException;
+
+import fr.imta.naomod.atl.runners.TransformationResult;
+import io.vertx.core.Context;
+import io.vertx.core.Future;
+import io.vertx.core.Promise;
+import io.vertx.core.Vertx;
+
+/**
+ * Runs a task for each model of a batch on the worker pool, as separate jobs
+ * with their own timeout. The task may have several steps, each one a job
+ * working on the outputs of the previous step, the timeout covering all the
+ * steps of a model.
+ *
+ * At most one model per worker is in flight for a batch, so that a large
+ * batch neither fills the queue of the pool nor holds back the other requests
+ * for its whole duration, and keeps few intermediate outputs in memory. A job
+ * rejected because the queue is full is retried shortly after.
+ *
+ * Each model is reported once to the listener: a model that timed out is
+ * reported as failed, and the outputs its task still produces afterwards are
+ * dropped, as are the ones of a cancelled batch.
+ *
+ * Must be used from a Vert.x context: the jobs are scheduled from it.
+ */
+public class BatchExecution {
+    private static final long RETRY_DELAY_MS = 100;
+
+    /**
+     * Work done for one model, on a worker thread.
+     */
+    public interface Task {
+        TransformationResult run(int index) throws Exception;
+    }
+
+    /**
+     * A step of the work done for one model, on a worker thread.
+     */
+    public interface Step {
+        /**
+         * @param previous outputs of the previous step, null for the first
+         *                 one, which the step must close once it used them
+         */
+        TransformationResult run(int index, int step, TransformationResult previous) throws Exception;
+    }
+
+    /**
+     * Receives the outcome of each model, from worker threads and in
+     * completion order.
+     */
+    public interface Listener {
+        /**
+         * Called with the outputs of a model, which are closed once it
+         * returns.
+         */
+        void completed(int index, TransformationResult result) throws Exception;
+
+        void failed(int index, Throwable error);
+    }
+
+    private final Vertx vertx;
+    private final ExecutionService executionService;
+    private final long timeout;
+    private final Promise<Void> done = Promise.promise();
+    private final Set<ExecutionService.Job<Void>> running = new HashSet<>();
+    // models reported to the listener, completed or failed
+    private final Set<Integer> reported = ConcurrentHashMap.newKeySet();
+
+    private Context context;
+    private Step task;
+    private int steps;
+    private Listener listener;
+    private int count;
+    private int next;
+    private int remaining;
+    private boolean cancelled;
+
+    /**
+     * @param timeout maximum execution time of each model in milliseconds,
+     *                or 0 for no timeout
+     */
+    public BatchExecution(Vertx vertx, ExecutionService executionService, long timeout) {
+        this.vertx = vertx;
+        this.executionService = executionService;
+        this.timeout = timeout;
+    }
+
+    /**
+     * Runs the task for each index below {@code count}. A model that fails
+     * does not stop the others. The returned future completes once every
+     * model was reported, and only fails if the batch is cancelled.
+     */
+    public Future<Void> run(int count, Task task, Listener listener) {
+        return run(count, 1, (index, step, previous) -> task.run(index), listener);
+    }
+
+    /**
+     * Runs the given number of steps for each index below {@code count}, the
+     * outputs of the last one being reported.
+     */
+    public Future<Void> run(int count, int steps, Step task, Listener listener) {
+        this.context = vertx.getOrCreateContext();
+        this.count = count;
+        this.remaining = count;
+        this.steps = steps;
+        this.task = task;
+        this.listener = listener;
+
+        if (count == 0) {
+            done.complete();
+        }
+        for (int i = 0; i < executionService.getPoolSize() && next < count; i++) {
+            startModel();
+        }
+        return done.future();
+    }
+
+    /**
+     * Stops scheduling models and cancels the running ones.
+     */
+    public void cancel() {
+        cancelled = true;
+        for (ExecutionService.Job<Void> job : new ArrayList<>(running)) {
+            job.cancel();
+        }
+        done.tryFail(new CancellationException("Batch cancelled"));
+    }
+
+    private void startModel() {
+        long deadline = timeout > 0 ? System.currentTimeMillis() + timeout : 0;
+        start(new Attempt(next++, 0, null, deadline));
+    }
+
+    private void start(Attempt attempt) {
+        long left = 0;
+        if (attempt.deadline > 0) {
+            left = attempt.deadline - System.currentTimeMillis();
+            if (left <= 0) {
+                failed(attempt, new TimeoutException("Execution exceeded " + timeout + " ms"));
+                return;
+            }
+        }
+        ExecutionService.Job<Void> job = executionService.submit(attempt, left);
+        running.add(job);
+
+        job.future().onComplete(ar -> {
+            running.remove(job);
+            if (cancelled) {
+                attempt.abandon();
+                return;
+            }
+
+            if (ar.succeeded()) {
+                TransformationResult result = attempt.take();
+                if (result == null) {
+                    // reported, or failed
+                    finished();
+                } else {
+                    start(new Attempt(attempt.index, attempt.step + 1, result, attempt.deadline));
+                }
+            } else if (ar.cause() instanceof RejectedExecutionException) {
+                vertx.setTimer(RETRY_DELAY_MS, id -> {
+                    if (cancelled) {
+                        attempt.abandon();
+                    } else {
+                        start(attempt);
+                    }
+                });
+            } else {
+                failed(attempt, ar.cause());
+            }
+        });
+    }
+
+    // The job of a model did not run or did not return in time
+    private void failed(Attempt attempt, Throwable error) {
+        attempt.abandon();
+        if (reported.add(attempt.index)) {
+            // report it from a blocking thread, writing the error may wait for the client
+            vertx.executeBlocking(() -> {
+                listener.failed(attempt.index, error);
+                return null;
+            }, false).onComplete(v -> finished());
+        } else {
+            // the task is reporting its model, the response must not end meanwhile
+            attempt.over.future().onComplete(v -> finished());
+        }
+    }
+
+    private void finished() {
+        if (cancelled) return;
+        remaining--;
+        if (remaining == 0) {
+            done.tryComplete();
+        } else if (next < count) {
+            startModel();
+        }
+    }
+
+    /**
+     * The job of one step of a model, run on a worker thread. The last step
+     * reports the model unless it was given up meanwhile, the others keep
+     * their outputs for the next step.
+     */
+    private class Attempt implements Callable<Void> {
+        final int index;
+        final int step;
+        final long deadline;
+        // completed on the context once the task returned, if it ran
+        final Promise<Void> over = Promise.promise();
+        // guarded by this, released by whoever takes them
+        private TransformationResult previous;
+        private TransformationResult result;
+        private boolean abandoned;
+
+        Attempt(int index, int step, TransformationResult previous, long deadline) {
+            this.index = index;
+            this.step = step;
+            this.previous = previous;
+            this.deadline = deadline;
+        }
+
+        @Override
+        public Void call() {
+            try {
+                TransformationResult input;
+                synchronized (this) {
+                    if (abandoned) return null;
+                    input = previous;
+                    previous = null;
+                }
+
+                TransformationResult output;
+                try {
+                    output = task.run(index, step, input);
+                } catch (Exception e) {
+                    // interrupted when its job timed out or was cancelled, which is reported instead
+                    boolean interrupted = e instanceof InterruptedException || Thread.currentThread().isInterrupted();
+                    if (!interrupted && reported.add(index)) {
+                        listener.failed(index, e);
+                    }
+                    return null;
+                }
+
+                if (step < steps - 1) {
+                    synchronized (this) {
+                        if (!abandoned) {
+                            result = output;
+                            return null;
+                        }
+                    }
+                    output.close();
+                    return null;
+                }
+                try (output) {
+                    if (!isAbandoned() && reported.add(index)) {
+                        listener.completed(index, output);
+                    }
+                } catch (Exception e) {
+                    listener.failed(index, e);
+                }
+                return null;
+            } finally {
+                context.runOnContext(v -> over.complete());
+            }
+        }
+
+        synchronized boolean isAbandoned() {
+            return abandoned;
+        }
+
+        /**
+         * Outputs of an intermediate step, null if the step failed or was
+         * the last one.
+         */
+        synchronized TransformationResult take() {
+            TransformationResult taken = result;
+            result = null;
+            return taken;
+        }
+
+        /**
+         * Gives the model up, the outputs it holds or its task still produces
+         * being closed without being reported.
+         */
+        void abandon() {
+            TransformationResult unused;
+            TransformationResult produced;
+            synchronized (this) {
+                abandoned = true;
+                unused = previous;
+                produced = result;
+                previous = null;
+                result = null;
+            }
+            if (unused != null) unused.close();
+            if (produced != null) produced.close();
+        }
+    }
+}
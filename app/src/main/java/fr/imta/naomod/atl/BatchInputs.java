@@ -0,0 +1,117 @@
+package fr.imta.naomod.atl;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import fr.imta.naomod.atl.runners.ModelInput;
+import fr.imta.naomod.atl.runners.ZipEntries;
+
+/**
+ * Input models of a batch, grouped in one set of inputs per execution.
+ *
+ * A transformation with a single input model takes every uploaded file as a
+ * separate model, whatever its field name. A transformation with several
+ * input models takes repeated fields named after its inputs, the n-th file of
+ * each field forming the n-th set. In both cases a .zip upload stands for
+ * each model it contains, in the order of the archive.
+ */
+public class BatchInputs {
+    private final List<String> names = new ArrayList<>();
+    private final List<Map<String, ModelInput>> inputs = new ArrayList<>();
+
+    private BatchInputs() {}
+
+    /**
+     * Groups the uploads by execution, reading the content of the zip
+     * archives. Throws IllegalArgumentException if they do not match the
+     * inputs of the transformation.
+     */
+    public static BatchInputs of(Transformation transformation, List<ModelUpload> uploads) throws IOException {
+        BatchInputs batch = new BatchInputs();
+        List<NamedFile> inputMetamodels = transformation.inputMetamodels;
+        if (inputMetamodels.isEmpty()) {
+            throw new IllegalArgumentException(transformation.name + " has no input model");
+        }
+
+        if (inputMetamodels.size() == 1) {
+            String inputName = inputMetamodels.get(0).name;
+            for (var model : expand(uploads).entrySet()) {
+                batch.names.add(model.getKey());
+                batch.inputs.add(Map.of(inputName, model.getValue()));
+            }
+        } else {
+            List<List<ModelInput>> fields = new ArrayList<>();
+            List<String> firstNames = null;
+            for (NamedFile input : inputMetamodels) {
+                Map<String, ModelInput> models = expand(uploads.stream()
+                    .filter(upload -> input.name.equals(upload.name()))
+                    .toList());
+                if (firstNames == null) {
+                    firstNames = new ArrayList<>(models.keySet());
+                } else if (models.size() != firstNames.size()) {
+                    throw new IllegalArgumentException("Expected " + firstNames.size() + " models for "
+                        + input.name + ", got " + models.size());
+                }
+                fields.add(new ArrayList<>(models.values()));
+            }
+
+            for (int i = 0; i < firstNames.size(); i++) {
+                Map<String, ModelInput> set = new LinkedHashMap<>();
+                for (int j = 0; j < inputMetamodels.size(); j++) {
+                    set.put(inputMetamodels.get(j).name, fields.get(j).get(i));
+                }
+                batch.names.add(firstNames.get(i));
+                batch.inputs.add(set);
+            }
+        }
+
+        if (batch.inputs.isEmpty()) {
+            throw new IllegalArgumentException("At least one input file required");
+        }
+        return batch;
+    }
+
+    public int size() {
+        return inputs.size();
+    }
+
+    /**
+     * Input models of the n-th execution, by input model name.
+     */
+    public Map<String, ModelInput> get(int index) {
+        return inputs.get(index);
+    }
+
+    /**
+     * Name of each execution, after its (first) input file.
+     */
+    public List<String> getNames() {
+        return names;
+    }
+
+    // One model per uploaded file, or per entry of an uploaded archive, by file name
+    private static Map<String, ModelInput> expand(List<ModelUpload> uploads) throws IOException {
+        Map<String, ModelInput> models = new LinkedHashMap<>();
+        for (ModelUpload upload : uploads) {
+            if (!upload.isZip()) {
+                models.put(unique(models, upload.fileName()), upload.input());
+                continue;
+            }
+            for (ZipEntries.Entry entry : upload.zipEntries()) {
+                models.put(unique(models, entry.name()), entry.input());
+            }
+        }
+        return models;
+    }
+
+    private static String unique(Map<String, ModelInput> models, String name) {
+        String candidate = name;
+        for (int i = 2; models.containsKey(candidate); i++) {
+            candidate = name + " (" + i + ")";
+        }
+        return candidate;
+    }
+}
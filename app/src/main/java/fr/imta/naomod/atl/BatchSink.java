@@ -0,0 +1,56 @@
+package fr.imta.naomod.atl;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+
+import fr.imta.naomod.atl.runners.ModelFormat;
+import fr.imta.naomod.atl.runners.TransformationResult;
+import io.vertx.core.http.HttpServerResponse;
+
+/**
+ * Streams the results of a batch of input models as a multipart/mixed
+ * response, in completion order.
+ *
+ * Each output model is sent as a part named after the output, with the name
+ * of the input file as file name and its position in the request in an
+ * X-Input-Index header. A model that failed is sent as a text/plain part
+ * named "error" holding the error message, so one bad model does not fail
+ * the whole batch.
+ */
+public class BatchSink implements BatchExecution.Listener {
+    private final ResponseSink sink;
+    private final List<String> inputNames;
+
+    public BatchSink(HttpServerResponse response, List<String> inputNames, ModelFormat format) {
+        this.sink = new ResponseSink(response, true, format);
+        this.inputNames = inputNames;
+    }
+
+    @Override
+    public synchronized void completed(int index, TransformationResult result) throws IOException {
+        String input = inputNames.get(index);
+        result.save(output -> sink.openPart(sink.getFormat().getContentType(), output, input,
+            "X-Input-Index: " + index), sink.getFormat());
+    }
+
+    @Override
+    public synchronized void failed(int index, Throwable error) {
+        String message = error.getMessage() != null ? error.getMessage() : error.toString();
+        try (OutputStream out = sink.openPart("text/plain; charset=utf-8", "error", inputNames.get(index),
+                "X-Input-Index: " + index)) {
+            out.write(message.getBytes(StandardCharsets.UTF_8));
+        } catch (IOException e) {
+            // the client is gone, the batch is cancelled along with the connection
+            Log.error("Cannot report error for " + inputNames.get(index) + ": " + e.getMessage());
+        }
+    }
+
+    /**
+     * Ends the response, once every model completed or failed.
+     */
+    public void end() {
+        sink.end();
+    }
+}
@@ -0,0 +1,131 @@
+package fr.imta.naomod.atl;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.List;
+
+import fr.imta.naomod.atl.runners.SnapshotStore;
+import io.vertx.core.buffer.Buffer;
+import io.vertx.core.json.DecodeException;
+import io.vertx.core.json.Json;
+
+/**
+ * Reads the transformations described by the JSON file of each folder of the
+ * catalog directories (the ATL zoo and the user transformations), through the
+ * {@link SnapshotStore} when it is enabled.
+ */
+class CatalogLoader {
+
+    private CatalogLoader() {}
+
+    /**
+     * A folder as kept in the snapshot: the file describing it (its JSON file,
+     * or the folder itself when it has none), when that file was read, and the
+     * transformations it describes.
+     */
+    record CachedFolder(String folder, String source, long lastModified, long size,
+            List<Transformation> transformations) {
+
+        boolean unchanged() {
+            try {
+                BasicFileAttributes attributes = Files.readAttributes(Path.of(source), BasicFileAttributes.class);
+                return attributes.lastModifiedTime().toMillis() == lastModified && attributes.size() == size;
+            } catch (IOException e) {
+                return false;
+            }
+        }
+    }
+
+    /**
+     * The transformations of every folder of the directories. Folders are read
+     * in parallel, and the transformations listed in folder name order so that
+     * they get the same ids from one start to the other.
+     *
+     * When the snapshot has the folders of a directory that did not change
+     * since, the folders are not listed again and only the JSON files that
+     * changed are read.
+     */
+    static List<Transformation> load(List<File> roots) {
+        List<Transformation> loaded = new ArrayList<>();
+        for (File root : roots) {
+            for (CachedFolder folder : loadRoot(root)) {
+                loaded.addAll(folder.transformations);
+            }
+        }
+        return loaded;
+    }
+
+    /**
+     * The transformations described in a folder, none if it has no JSON file
+     * or an invalid one.
+     */
+    static List<Transformation> loadFolder(File folder) {
+        return readFolder(folder).transformations;
+    }
+
+    private static List<CachedFolder> loadRoot(File root) {
+        SnapshotStore snapshot = SnapshotStore.getInstance();
+        List<CachedFolder> folders = null;
+        try {
+            byte[] stored = snapshot.get(SnapshotStore.Kind.CATALOG, root.toPath());
+            if (stored != null) {
+                folders = Arrays.asList(Json.decodeValue(Buffer.buffer(stored), CachedFolder[].class));
+            }
+        } catch (IOException | DecodeException e) {
+            Log.error("Cannot read the catalog of " + root + " from the snapshot: " + e.getMessage());
+        }
+
+        List<CachedFolder> current;
+        if (folders == null) {
+            File[] transformationDirs = root.listFiles(File::isDirectory);
+            if (transformationDirs == null) return List.of();
+            Arrays.sort(transformationDirs, Comparator.comparing(File::getName));
+            current = Arrays.stream(transformationDirs).parallel()
+                .map(CatalogLoader::readFolder)
+                .toList();
+        } else {
+            current = folders.parallelStream()
+                .map(folder -> folder.unchanged() ? folder : readFolder(new File(folder.folder)))
+                .toList();
+        }
+
+        if (snapshot.isEnabled() && !current.equals(folders)) {
+            snapshot.put(SnapshotStore.Kind.CATALOG, root.toPath(), Json.encode(current).getBytes(StandardCharsets.UTF_8));
+        }
+        return current;
+    }
+
+    private static CachedFolder readFolder(File folder) {
+        File config = findFileWithExtension(folder, "json");
+        File source = config != null ? config : folder;
+        long lastModified = source.lastModified();
+        long size = source.length();
+        if (config == null) {
+            return new CachedFolder(folder.getAbsolutePath(), source.getAbsolutePath(), lastModified, size, List.of());
+        }
+        try {
+            Transformation[] transformations = Json.decodeValue(Files.readString(config.toPath()),
+                Transformation[].class);
+            for (Transformation transformation : transformations) {
+                transformation.folderPath = folder.getAbsolutePath();
+            }
+            return new CachedFolder(folder.getAbsolutePath(), source.getAbsolutePath(), lastModified, size,
+                Arrays.asList(transformations));
+        } catch (IOException | DecodeException e) {
+            Log.error("Cannot load " + config + ": " + e.getMessage());
+            return new CachedFolder(folder.getAbsolutePath(), source.getAbsolutePath(), lastModified, size, List.of());
+        }
+    }
+
+    private static File findFileWithExtension(File dir, String extension) {
+        File[] files = dir.listFiles((d, name) -> name.endsWith(extension));
+        return (files != null && files.length > 0) ? files[0] : null;
+    }
+}
@@ -0,0 +1,140 @@
+package fr.imta.naomod.atl;
+
+import static java.nio.file.StandardWatchEventKinds.ENTRY_CREATE;
+import static java.nio.file.StandardWatchEventKinds.ENTRY_DELETE;
+import static java.nio.file.StandardWatchEventKinds.ENTRY_MODIFY;
+import static java.nio.file.StandardWatchEventKinds.OVERFLOW;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.ClosedWatchServiceException;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.WatchEvent;
+import java.nio.file.WatchKey;
+import java.nio.file.WatchService;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
+
+/**
+ * Watches the catalog directories and their transformation folders, and has
+ * a folder read again when it is created, changed or deleted.
+ *
+ * A folder is read once no change happened for ATL_WATCH_DELAY ms (500 by
+ * default), so that a folder being copied is read once, complete. Only the
+ * files directly in a transformation folder are watched.
+ */
+class CatalogWatcher implements Runnable {
+    private final WatchService watchService;
+    private final Consumer<File> reload;
+    private final long delay = Config.getLong("ATL_WATCH_DELAY", 500);
+
+    // watched directories by key, only used by the watcher thread
+    private final Map<WatchKey, Path> roots = new HashMap<>();
+    private final Map<WatchKey, Path> folders = new HashMap<>();
+
+    CatalogWatcher(List<File> catalogRoots, Consumer<File> reload) throws IOException {
+        this.watchService = catalogRoots.isEmpty()
+            ? null
+            : catalogRoots.get(0).toPath().getFileSystem().newWatchService();
+        this.reload = reload;
+        for (File catalogRoot : catalogRoots) {
+            Path root = catalogRoot.toPath().toAbsolutePath();
+            roots.put(root.register(watchService, ENTRY_CREATE, ENTRY_DELETE, ENTRY_MODIFY), root);
+            try (DirectoryStream<Path> children = Files.newDirectoryStream(root, Files::isDirectory)) {
+                for (Path folder : children) {
+                    watch(folder);
+                }
+            }
+        }
+    }
+
+    void start() {
+        if (watchService == null) return;
+        Thread thread = new Thread(this, "atl-catalog-watcher");
+        thread.setDaemon(true);
+        thread.start();
+    }
+
+    @Override
+    public void run() {
+        Set<Path> changed = new LinkedHashSet<>();
+        try {
+            while (true) {
+                WatchKey key = changed.isEmpty()
+                    ? watchService.take()
+                    : watchService.poll(delay, TimeUnit.MILLISECONDS);
+                if (key == null) {
+                    // no change for the delay, the folders are complete
+                    for (Path folder : changed) {
+                        reload(folder);
+                    }
+                    changed.clear();
+                    continue;
+                }
+
+                Path root = roots.get(key);
+                Path folder = folders.get(key);
+                for (WatchEvent<?> event : key.pollEvents()) {
+                    if (event.kind() == OVERFLOW) {
+                        // events were lost, read everything again
+                        changed.addAll(folders.values());
+                        if (root != null) {
+                            addFolders(root, changed);
+                        }
+                    } else if (root != null) {
+                        Path child = root.resolve((Path) event.context());
+                        if (event.kind() == ENTRY_CREATE && Files.isDirectory(child)) {
+                            watch(child);
+                        }
+                        // a deleted folder can no longer be told from a file, reading it again is harmless
+                        if (Files.isDirectory(child) || event.kind() == ENTRY_DELETE) {
+                            changed.add(child);
+                        }
+                    } else if (folder != null) {
+                        changed.add(folder);
+                    }
+                }
+                if (!key.reset()) {
+                    // deleted, the event of its catalog directory has it read again
+                    roots.remove(key);
+                    folders.remove(key);
+                }
+            }
+        } catch (InterruptedException | ClosedWatchServiceException e) {
+            // stopped
+        }
+    }
+
+    private void watch(Path folder) {
+        try {
+            folders.put(folder.register(watchService, ENTRY_CREATE, ENTRY_DELETE, ENTRY_MODIFY), folder);
+        } catch (IOException e) {
+            Log.error("Cannot watch " + folder + ": " + e.getMessage());
+        }
+    }
+
+    private static void addFolders(Path root, Set<Path> changed) {
+        try (DirectoryStream<Path> children = Files.newDirectoryStream(root, Files::isDirectory)) {
+            for (Path folder : children) {
+                changed.add(folder);
+            }
+        } catch (IOException e) {
+            Log.error("Cannot list " + root + ": " + e.getMessage());
+        }
+    }
+
+    private void reload(Path folder) {
+        try {
+            reload.accept(folder.toFile());
+        } catch (RuntimeException e) {
+            Log.error("Cannot reload " + folder + ": " + e.getMessage());
+        }
+    }
+}
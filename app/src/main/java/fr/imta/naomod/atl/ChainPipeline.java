@@ -0,0 +1,55 @@
+package fr.imta.naomod.atl;
+
+import java.util.List;
+
+import fr.imta.naomod.atl.runners.ModelInput;
+import io.vertx.core.Future;
+import io.vertx.core.Vertx;
+
+/**
+ * Runs a chain of transformations over a batch of input models as a pipeline:
+ * model k+1 enters the first step while model k is in the second one.
+ *
+ * Each step of each model is a job of the shared {@link ExecutionService}, so
+ * a chain takes its share of the workers like any other request, and is
+ * answered 503 when the server is busy. As in {@link BatchExecution}, at most
+ * one model per worker is in the chain at a time, so that a few intermediate
+ * models are kept in memory whatever the batch size, and the timeout applies
+ * to each model, from its first step to its last.
+ *
+ * Must be used from a Vert.x context.
+ */
+public class ChainPipeline {
+    private final TransformationManager manager;
+    private final List<Transformation> chain;
+    private final BatchExecution execution;
+
+    /**
+     * @param timeout maximum execution time of each model in milliseconds,
+     *                or 0 for no timeout
+     */
+    public ChainPipeline(Vertx vertx, ExecutionService executionService, TransformationManager manager,
+            List<Transformation> chain, long timeout) {
+        this.manager = manager;
+        this.chain = chain;
+        this.execution = new BatchExecution(vertx, executionService, timeout);
+    }
+
+    /**
+     * Pushes all the inputs through the chain. The returned future completes
+     * once each of them completed or failed, and only fails if the pipeline
+     * is cancelled.
+     */
+    public Future<Void> run(List<ModelInput> inputs, BatchExecution.Listener listener) {
+        return execution.run(inputs.size(), chain.size(),
+            (index, step, previous) -> manager.applyChainStep(chain, step, previous, inputs.get(index)), listener);
+    }
+
+    /**
+     * Drops the pending models and cancels the running steps, releasing the
+     * intermediate models.
+     */
+    public void cancel() {
+        execution.cancel();
+    }
+}
@@ -0,0 +1,48 @@
+package fr.imta.naomod.atl;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+
+import fr.imta.naomod.atl.runners.TransformationResult;
+
+/**
+ * Output of a transformation chain: the result of its last step, and how
+ * long each step took. Closing it releases the output models.
+ */
+public class ChainResult implements AutoCloseable {
+    private final TransformationResult result;
+    private final List<String> steps = new ArrayList<>();
+    private final List<Long> durations = new ArrayList<>();
+
+    ChainResult(TransformationResult result) {
+        this.result = result;
+    }
+
+    void addStep(String transformation, long durationNanos) {
+        steps.add(transformation);
+        durations.add(durationNanos);
+    }
+
+    public TransformationResult getResult() {
+        return result;
+    }
+
+    /**
+     * Step timings as a Server-Timing header value, e.g.
+     * {@code step0;desc="Make2Ant";dur=12.5, step1;desc="Ant2Maven";dur=3.1}
+     */
+    public String getServerTiming() {
+        List<String> metrics = new ArrayList<>();
+        for (int i = 0; i < steps.size(); i++) {
+            metrics.add(String.format(Locale.ROOT, "step%d;desc=\"%s\";dur=%.1f",
+                i, steps.get(i), durations.get(i) / 1_000_000.0));
+        }
+        return String.join(", ", metrics);
+    }
+
+    @Override
+    public void close() {
+        result.close();
+    }
+}
@@ -0,0 +1,227 @@
+package fr.imta.naomod.atl;
+
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import io.vertx.core.Context;
+import io.vertx.core.Future;
+import io.vertx.core.Promise;
+import io.vertx.core.Vertx;
+
+/**
+ * Runs transformations on a bounded pool of worker threads so that the event
+ * loop only deals with HTTP I/O.
+ *
+ * Jobs that cannot be queued are rejected right away with a
+ * {@link RejectedExecutionException}, jobs running longer than their timeout
+ * are interrupted and fail with a {@link TimeoutException}.
+ *
+ * ATL does not check for interrupts, so a job that timed out or was cancelled
+ * once started keeps its worker until the transformation is over. Such a job
+ * still holds its slot: at most {@code workers + queueSize} jobs are in
+ * flight, started, queued or winding down, and the next ones are rejected.
+ */
+public class ExecutionService {
+    private final Vertx vertx;
+    private final ThreadPoolExecutor executor;
+    private final long defaultTimeout;
+    private final int capacity;
+    private final int queueSize;
+    // one per job in flight, released once the job left the queue without running or its task returned
+    private final Semaphore permits;
+
+    public ExecutionService(Vertx vertx, int workers, int queueSize, long defaultTimeout) {
+        this(vertx, workers, queueSize, defaultTimeout, 0);
+    }
+
+    /**
+     * @param stackSize stack size of the workers in bytes, 0 for the default
+     *                  of the JVM
+     */
+    public ExecutionService(Vertx vertx, int workers, int queueSize, long defaultTimeout, long stackSize) {
+        if (workers < 1) {
+            throw new IllegalArgumentException("ATL_WORKERS must be at least 1, got " + workers);
+        }
+        if (queueSize < 0) {
+            throw new IllegalArgumentException("ATL_QUEUE_SIZE must not be negative, got " + queueSize);
+        }
+        this.vertx = vertx;
+        this.defaultTimeout = defaultTimeout;
+        this.capacity = workers + queueSize;
+        this.queueSize = queueSize;
+        this.permits = new Semaphore(capacity);
+
+        // the permits bound the jobs, without a queue they are only accepted while a worker is idle; the queue
+        // holds them for the instant a worker takes to come back to it, which a SynchronousQueue would reject
+        BlockingQueue<Runnable> queue = new ArrayBlockingQueue<>(capacity);
+        AtomicInteger threadCount = new AtomicInteger();
+        this.executor = new ThreadPoolExecutor(
+            workers, workers,
+            0L, TimeUnit.MILLISECONDS,
+            queue,
+            r -> {
+                Thread t = new Thread(null, r, "atl-worker-" + threadCount.incrementAndGet(), stackSize);
+                t.setDaemon(true);
+                return t;
+            },
+            new ThreadPoolExecutor.AbortPolicy()
+        );
+    }
+
+    /**
+     * Creates a service sized from ATL_WORKERS (default: number of cores),
+     * ATL_QUEUE_SIZE (default: 64), ATL_TIMEOUT_MS (default: 5 minutes) and
+     * ATL_WORKER_STACK_MB (default: 64).
+     *
+     * The binary model format reads and writes a model recursively, one
+     * level per cross reference to an element not written yet, which takes
+     * up to 64 MB of stack for a model of 100,000 elements.
+     */
+    public static ExecutionService fromConfig(Vertx vertx) {
+        return new ExecutionService(
+            vertx,
+            Config.getInt("ATL_WORKERS", Runtime.getRuntime().availableProcessors()),
+            Config.getInt("ATL_QUEUE_SIZE", 64),
+            Config.getLong("ATL_TIMEOUT_MS", 5 * 60 * 1000L),
+            Config.getLong("ATL_WORKER_STACK_MB", 64) * 1024 * 1024
+        );
+    }
+
+    public long getDefaultTimeout() {
+        return defaultTimeout;
+    }
+
+    public int getActiveCount() {
+        return executor.getActiveCount();
+    }
+
+    public int getQueueSize() {
+        return executor.getQueue().size();
+    }
+
+    public int getQueueCapacity() {
+        return queueSize;
+    }
+
+    public int getPoolSize() {
+        return executor.getMaximumPoolSize();
+    }
+
+    /**
+     * Jobs accepted and not over yet, including the ones that timed out or
+     * were cancelled but are still running.
+     */
+    public int getInFlightCount() {
+        return capacity - permits.availablePermits();
+    }
+
+    /**
+     * Submits a task to the worker pool. The returned job completes on the
+     * Vert.x context of the caller.
+     *
+     * @param timeout maximum execution time in milliseconds, including the
+     *                time spent waiting in the queue, or 0 for no timeout
+     */
+    public <T> Job<T> submit(Callable<T> task, long timeout) {
+        Context context = vertx.getOrCreateContext();
+        Job<T> job = new Job<>(task, context, executor, permits);
+
+        if (!permits.tryAcquire()) {
+            job.promise.tryFail(new RejectedExecutionException(capacity + " executions already in flight"));
+            return job;
+        }
+        try {
+            executor.execute(job.task);
+        } catch (RejectedExecutionException e) {
+            job.release();
+            job.promise.tryFail(e);
+            return job;
+        }
+
+        if (timeout > 0) {
+            long timerId = vertx.setTimer(timeout, id -> {
+                if (job.task.cancel(true)) {
+                    job.dequeue();
+                    job.promise.tryFail(new TimeoutException("Execution exceeded " + timeout + " ms"));
+                }
+            });
+            job.promise.future().onComplete(ar -> vertx.cancelTimer(timerId));
+        }
+        return job;
+    }
+
+    public static class Job<T> {
+        private final Promise<T> promise = Promise.promise();
+        private final FutureTask<T> task;
+        private final ThreadPoolExecutor executor;
+        private final Semaphore permits;
+        private final AtomicBoolean released = new AtomicBoolean();
+
+        private Job(Callable<T> callable, Context context, ThreadPoolExecutor executor, Semaphore permits) {
+            this.executor = executor;
+            this.permits = permits;
+            this.task = new FutureTask<>(callable) {
+                @Override
+                public void run() {
+                    // a cancelled task returns right away, a running one only once ATL is done
+                    try {
+                        super.run();
+                    } finally {
+                        release();
+                    }
+                }
+
+                @Override
+                protected void done() {
+                    context.runOnContext(v -> {
+                        try {
+                            promise.tryComplete(get());
+                        } catch (ExecutionException e) {
+                            promise.tryFail(e.getCause());
+                        } catch (CancellationException | InterruptedException e) {
+                            promise.tryFail(e);
+                        }
+                    });
+                }
+            };
+        }
+
+        public Future<T> future() {
+            return promise.future();
+        }
+
+        /**
+         * Cancels the job, interrupting the worker if it already started.
+         */
+        public void cancel() {
+            if (task.cancel(true)) {
+                dequeue();
+                promise.tryFail(new CancellationException("Execution cancelled"));
+            }
+        }
+
+        // Frees the slot right away if the job did not start yet, otherwise the worker frees it once done
+        private void dequeue() {
+            if (executor.remove(task)) {
+                release();
+            }
+        }
+
+        private void release() {
+            if (released.compareAndSet(false, true)) {
+                permits.release();
+            }
+        }
+    }
+}
@@ -0,0 +1,45 @@
+package fr.imta.naomod.atl;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.ToDoubleFunction;
+
+/**
+ * Average execution time of each transformation, as an exponentially
+ * weighted moving average so that it follows the changes of load. Only the
+ * {@link Metrics.Phase#RUN} phase of the requests served is recorded: the
+ * time spent parsing the inputs or streaming the outputs depends on the
+ * models and the client rather than on the transformation, and the warmup
+ * runs are slower than the following ones.
+ */
+class ExecutionTimes {
+    // weight of the last execution in the average
+    private static final double ALPHA = 0.2;
+
+    // in ms, by transformation name
+    private final Map<String, Double> averages = new ConcurrentHashMap<>();
+
+    void record(String transformation, long nanos) {
+        averages.merge(transformation, nanos / 1e6, (average, last) -> average + ALPHA * (last - average));
+    }
+
+    void forget(String transformation) {
+        averages.remove(transformation);
+    }
+
+    /**
+     * Expected execution time of each transformation, in ms. One that never
+     * ran is expected to take as long as the others on average, so that it is
+     * neither preferred nor avoided.
+     */
+    ToDoubleFunction<String> estimates() {
+        double total = 0;
+        int count = 0;
+        for (double average : averages.values()) {
+            total += average;
+            count++;
+        }
+        double unknown = count == 0 ? 1 : total / count;
+        return transformation -> averages.getOrDefault(transformation, unknown);
+    }
+}
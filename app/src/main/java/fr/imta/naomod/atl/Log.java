@@ -0,0 +1,91 @@
+package fr.imta.naomod.atl;
+
+import java.io.PrintStream;
+import java.io.PrintWriter;
+import java.io.StringWriter;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Log of the request path (event loop and workers), written to the standard
+ * streams by a background thread so that a slow console never holds up a
+ * request.
+ *
+ * At most ATL_LOG_QUEUE_SIZE messages (8192 by default) wait to be written,
+ * further messages are dropped and counted rather than waited for.
+ */
+public class Log {
+    private record Message(PrintStream stream, String text) {}
+
+    private static final BlockingQueue<Message> queue =
+        new ArrayBlockingQueue<>(Math.max(1, Config.getInt("ATL_LOG_QUEUE_SIZE", 8192)));
+    private static final AtomicLong dropped = new AtomicLong();
+
+    static {
+        Thread writer = new Thread(Log::write, "atl-log");
+        writer.setDaemon(true);
+        writer.start();
+        // what is still queued when the server stops
+        Runtime.getRuntime().addShutdownHook(new Thread(Log::drain, "atl-log-drain"));
+    }
+
+    private Log() {}
+
+    public static void info(String text) {
+        offer(new Message(System.out, text));
+    }
+
+    public static void error(String text) {
+        offer(new Message(System.err, text));
+    }
+
+    public static void error(String text, Throwable error) {
+        StringWriter trace = new StringWriter();
+        error.printStackTrace(new PrintWriter(trace));
+        offer(new Message(System.err, text + System.lineSeparator() + trace.toString().stripTrailing()));
+    }
+
+    // Messages dropped since the server started because the queue was full
+    public static long getDropped() {
+        return dropped.get();
+    }
+
+    private static void offer(Message message) {
+        if (queue == null) {
+            // logged by Config while reading the size of the queue
+            message.stream.println(message.text);
+            return;
+        }
+        if (!queue.offer(message)) {
+            dropped.incrementAndGet();
+        }
+    }
+
+    private static void write() {
+        long reported = 0;
+        try {
+            while (true) {
+                Message message = queue.take();
+                message.stream.println(message.text);
+                long lost = dropped.get();
+                if (lost != reported) {
+                    System.err.println((lost - reported) + " log messages dropped");
+                    reported = lost;
+                }
+            }
+        } catch (InterruptedException e) {
+            // stopped
+        }
+    }
+
+    private static void drain() {
+        List<Message> messages = new ArrayList<>();
+        queue.drainTo(messages);
+        for (Message message : messages) {
+            message.stream.println(message.text);
+        }
+    }
+}
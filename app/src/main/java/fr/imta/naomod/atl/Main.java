@@ -1,37 +1,71 @@
 package fr.imta.naomod.atl;
-import java.nio.file.Files;
+
+import fr.imta.naomod.atl.runners.ModelFormat;
+import fr.imta.naomod.atl.runners.ModelInput;
+import fr.imta.naomod.atl.runners.SnapshotStore;
+import io.vertx.core.Future;
 import io.vertx.core.Vertx;
+import io.vertx.core.http.HttpServerResponse;
 import io.vertx.core.json.JsonArray;
-import io.vertx.ext.web.FileUpload;
 import io.vertx.ext.web.Router;
+import io.vertx.ext.web.RoutingContext;
 import io.vertx.ext.web.handler.BodyHandler;
 
 import java.io.File;
 import java.io.IOException;
+import java.lang.management.ManagementFactory;
+import java.lang.management.MemoryUsage;
 import java.util.List;
-import java.util.regex.Pattern;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeoutException;
 import java.util.Map;
 import java.util.stream.Collectors;
 
 import java.util.ArrayList;
 import java.util.HashMap;
+import java.util.LinkedHashMap;
 public class Main {
     private Vertx server;
     private TransformationManager transformationManager;
+    private ExecutionService executionService;
+    private Warmup warmup;
 
     public Main() {
         server = Vertx.vertx();
         transformationManager = new TransformationManager();
+        executionService = ExecutionService.fromConfig(server);
+        warmup = new Warmup(transformationManager);
+        registerGauges();
+    }
+
+    // Gauges of /metrics, read on each scrape
+    private void registerGauges() {
+        Metrics metrics = Metrics.getInstance();
+        metrics.gauge("atl_workers", "Threads of the worker pool", executionService::getPoolSize);
+        metrics.gauge("atl_executions_active", "Executions running on the worker pool", executionService::getActiveCount);
+        metrics.gauge("atl_executions_queued", "Executions waiting for a worker", executionService::getQueueSize);
+        metrics.gauge("atl_executions_in_flight", "Executions accepted and not over, timed out ones still running included",
+            executionService::getInFlightCount);
+        metrics.gauge("atl_executions_queue_capacity", "Executions that can wait for a worker",
+            executionService::getQueueCapacity);
+        metrics.gauge("atl_cache", "Statistics of the caches and execution environment pools, as in /debug/caches",
+            transformationManager::getCacheStats);
+        metrics.gauge("atl_ready", "Whether the warmup is over", warmup::isReady);
+        metrics.gauge("atl_heap_used_bytes", "Used heap",
+            () -> ManagementFactory.getMemoryMXBean().getHeapMemoryUsage().getUsed());
+        metrics.gauge("atl_log_dropped", "Log messages dropped because the log queue was full", Log::getDropped);
     }
 
     public void start() {
         var router = Router.router(server);
 
-        router.route().handler(BodyHandler.create().setDeleteUploadedFilesOnEnd(true));
+        router.route().handler(new StreamingUploadHandler(BodyHandler.create().setDeleteUploadedFilesOnEnd(true)));
 
         router.get("/transformations").handler(ctx -> {
             List<Transformation> allTransformations = transformationManager.getAllTransformations();
-            System.out.println("Returning " + allTransformations.size() + " transformations");
+            Log.info("Returning " + allTransformations.size() + " transformations");
             ctx.json(allTransformations);
         });
 
@@ -41,7 +75,7 @@ public class Main {
                 .filter(t -> t.enabled != null && t.enabled)
                 .collect(Collectors.toList());
             
-            System.out.println("Returning " + enabledTransformations.size() + " enabled transformations");
+            Log.info("Returning " + enabledTransformations.size() + " enabled transformations");
             ctx.json(enabledTransformations);
         });
 
@@ -99,21 +133,8 @@ public class Main {
                 return;
             }
 
-            // Convert input and output metamodel parameters to lowercase
-            String normalizedInputMetamodel = inputMetamodel.toLowerCase();
-            String normalizedOutputMetamodel = outputMetamodel.toLowerCase();
-
-            List<Transformation> allTransformations = transformationManager.getAllTransformations();
-            List<String> matchingTransformations = allTransformations.stream()
-                .filter(transformation -> {
-                    boolean matchesInput = transformation.inputMetamodels.stream()
-                        .anyMatch(mm -> mm.path != null && mm.path.toLowerCase().contains(normalizedInputMetamodel));
-                    boolean matchesOutput = transformation.outputMetamodels.stream()
-                        .anyMatch(mm -> mm.path != null && mm.path.toLowerCase().contains(normalizedOutputMetamodel));
-                    return matchesInput && matchesOutput;
-                })
-                .map(transformation -> transformation.name)
-                .collect(Collectors.toList());
+            List<String> matchingTransformations =
+                transformationManager.findTransformationsByMetamodels(inputMetamodel, outputMetamodel);
 
             if (matchingTransformations.isEmpty()) {
                 ctx.response().setStatusCode(404).end("No transformations found for the given metamodels");
@@ -121,6 +142,39 @@ public class Main {
                 ctx.json(matchingTransformations);
             }
         });
+
+        // Chain of transformations from a metamodel to another: the shortest one, or the fastest with weighted=true
+        router.get("/transformations/path").handler(ctx -> {
+            TransformationGraph.Chain chain = findChain(ctx);
+            if (chain == null) return;
+
+            Map<String, Object> result = new LinkedHashMap<>();
+            result.put("source", ctx.request().getParam("source"));
+            result.put("target", ctx.request().getParam("target"));
+            result.put("transformationChain", chain.transformations());
+            result.put("metamodels", chain.metamodels());
+            result.put("estimatedMs", transformationManager.estimateDuration(chain.transformations()));
+            ctx.json(result);
+        });
+
+        // Find the chain as above and apply it to the uploaded model
+        router.post("/transformations/path/apply").handler(ctx -> {
+            TransformationGraph.Chain chain = findChain(ctx);
+            if (chain == null) return;
+            if (chain.transformations().isEmpty()) {
+                ctx.response().setStatusCode(400).end("Source and target metamodels are the same");
+                return;
+            }
+
+            List<ModelUpload> uploads = ModelUpload.of(ctx);
+            if (uploads.size() != 1) {
+                ctx.response().setStatusCode(400).end("Exactly one input file required");
+                return;
+            }
+
+            ctx.response().putHeader("X-Transformation-Chain", String.join(",", chain.transformations()));
+            applyChain(ctx, chain.transformations(), uploads.get(0));
+        });
                 
         router.get("/transformation/:idOrName").handler(ctx -> {
             String idOrName = ctx.pathParam("idOrName");
@@ -175,30 +229,72 @@ public class Main {
                 return;
             }
         
-            try {
-                // Add transformation with multiple metamodels
-                Transformation transformation = transformationManager.addTransformation(name, atlFilePath,
-                        inputMetamodelPaths, outputMetamodelPaths,description);
-                ctx.response().setStatusCode(201);
-                ctx.json(transformation);
-            } catch (IOException e) {
-                ctx.response().setStatusCode(500).end("Error adding transformation: " + e.getMessage());
-            }
+            // Add transformation with multiple metamodels (copies files, so not on the event loop)
+            execute(ctx, () -> transformationManager.addTransformation(name, atlFilePath,
+                    inputMetamodelPaths, outputMetamodelPaths, description))
+                .onSuccess(transformation -> {
+                    ctx.response().setStatusCode(201);
+                    ctx.json(transformation);
+                })
+                .onFailure(err -> fail(ctx, err, "Error adding transformation: " + err.getMessage()));
         });
 
 
         router.get("/debug/transformations").handler(ctx -> {
             List<Transformation> allTransformations = transformationManager.getAllTransformations();
-            System.out.println("Total transformations: " + allTransformations.size());
+            Log.info("Total transformations: " + allTransformations.size());
             for (Transformation t : allTransformations) {
-                System.out.println("Name: " + t.name);
-                System.out.println("ATL files: " + t.atlFile);
-                System.out.println("Folder: " + t.folderPath);
+                Log.info("Name: " + t.name);
+                Log.info("ATL files: " + t.atlFile);
+                Log.info("Folder: " + t.folderPath);
             }
             ctx.json(allTransformations);
         });
 
 
+        // Heap usage, to check that models are released once requests are over
+        router.get("/debug/heap").handler(ctx -> {
+            MemoryUsage heap = ManagementFactory.getMemoryMXBean().getHeapMemoryUsage();
+            Map<String, Object> usage = new HashMap<>();
+            usage.put("used", heap.getUsed());
+            usage.put("committed", heap.getCommitted());
+            usage.put("max", heap.getMax());
+            usage.put("activeExecutions", executionService.getActiveCount());
+            usage.put("queuedExecutions", executionService.getQueueSize());
+            usage.put("inFlightExecutions", executionService.getInFlightCount());
+            ctx.json(usage);
+        });
+
+
+        // The server is up
+        router.get("/health/live").handler(ctx -> ctx.json(Map.of("status", "up")));
+
+        // The server is ready to take traffic once the enabled transformations are warmed up
+        router.get("/health/ready").handler(ctx -> {
+            ctx.response().setStatusCode(warmup.isReady() ? 200 : 503);
+            ctx.json(warmup.getStatus());
+        });
+
+        // Warm up the enabled transformations again, e.g. after some were added
+        router.post("/debug/warmup").handler(ctx -> {
+            ctx.response().setStatusCode(warmup.start() ? 202 : 409);
+            ctx.json(warmup.getStatus());
+        });
+
+
+        // Metamodel registry and compiled module caches statistics
+        router.get("/debug/caches").handler(ctx -> {
+            ctx.json(transformationManager.getCacheStats());
+        });
+
+        // Phase latencies and pool, queue and cache gauges, in the Prometheus text format
+        router.get("/metrics").handler(ctx -> {
+            ctx.response()
+                .putHeader("Content-Type", "text/plain; version=0.0.4; charset=utf-8")
+                .end(Metrics.getInstance().scrape());
+        });
+
+
         // Search for a term in all atl files transformations
 
         router.get("/transformations/search").handler(ctx -> {
@@ -209,36 +305,10 @@ public class Main {
                 return;
             }
         
-            try {
-                List<Transformation> allTransformations = transformationManager.getAllTransformations();
-                List<SearchResult> results = new ArrayList<>();
-                
-                for (Transformation transformation : allTransformations) {
-                    if (transformation.atlFile != null && !transformation.atlFile.isEmpty()) {
-                        try {
-                            File file = new File(transformation.folderPath, transformation.atlFile);
-                            if (file.exists()) {
-                                String atlContent = Files.readString(file.toPath());
-                                if (atlContent.toLowerCase().contains(searchTerm.toLowerCase())) {
-                                    results.add(new SearchResult(
-                                        transformation.name,
-                                        transformation.atlFile,
-                                        highlightSearchTerm(atlContent, searchTerm)
-                                    ));
-                                }
-                            }
-                        } catch (IOException e) {
-                            System.err.println("Error reading file " + transformation.atlFile + ": " + e.getMessage());
-                        }
-                    }
-                }     
-                ctx.json(results);
-            } catch (Exception e) {
-                e.printStackTrace();
-                ctx.response()
-                    .setStatusCode(500)
-                    .end("Error searching transformations: " + e.getMessage());
-            }
+            // the matching lines are read from the sources, so not on the event loop
+            this.<List<SearchResult>>execute(ctx, () -> transformationManager.searchTransformations(searchTerm))
+                .onSuccess(ctx::json)
+                .onFailure(err -> fail(ctx, err, "Error searching transformations: " + err.getMessage()));
         });
 
 
@@ -246,48 +316,101 @@ public class Main {
 
         // Apply a transformation by ID or name
         router.post("/transformation/:idOrName/apply").handler(ctx -> {
-            List<FileUpload> uploads = ctx.fileUploads();
+            List<ModelUpload> uploads = ModelUpload.of(ctx);
             
             if (uploads.size() == 0) {
                 ctx.fail(503);
             } else {
                 String idOrName = ctx.pathParam("idOrName");
+                Transformation transformation = null;
+                
+                // Try to parse as integer for ID
                 try {
-                    Transformation transformation = null;
-                    
-                    // Try to parse as integer for ID
-                    try {
-                        int id = Integer.parseInt(idOrName);
-                        transformation = transformationManager.getTransformationById(id);
-                    } catch (NumberFormatException e) {
-                        // If not an integer, treat as name
-                        transformation = transformationManager.getTransformationByName(idOrName);
-                    }
-                     
-                    if (transformation == null) {
-                        ctx.response()
-                            .setStatusCode(404)
-                            .end("Transformation not found with ID or name: " + idOrName);
-                        return;
-                    }
-                    
-                    Map<String, String> inputs = new HashMap<>();
-                    
-                    for (var upload : uploads) {
-                        inputs.put(upload.name(), upload.uploadedFileName());
-                    }
-
-                    String result = transformationManager.applyTransformation(transformation, inputs);
-                    ctx.response().setStatusCode(200).send(result);
-                } catch (Exception e) {
-                    e.printStackTrace();
+                    int id = Integer.parseInt(idOrName);
+                    transformation = transformationManager.getTransformationById(id);
+                } catch (NumberFormatException e) {
+                    // If not an integer, treat as name
+                    transformation = transformationManager.getTransformationByName(idOrName);
+                }
+                 
+                if (transformation == null) {
                     ctx.response()
-                        .setStatusCode(500)
-                        .end("Error applying transformation");
+                        .setStatusCode(404)
+                        .end("Transformation not found with ID or name: " + idOrName);
+                    return;
+                }
+                
+                Map<String, ModelInput> inputs = new HashMap<>();
+                
+                for (var upload : uploads) {
+                    inputs.put(upload.name(), upload.input());
                 }
+
+                Transformation selected = transformation;
+                ModelFormat format = responseFormat(ctx);
+                if (!transformationManager.isResultCacheEnabled()) {
+                    applyUploads(ctx, selected, inputs, format, null);
+                    return;
+                }
+                // hash the inputs first: the result is identified by them, and may be cached
+                this.<String>execute(ctx, () -> {
+                        Map<String, String> hashes = new HashMap<>();
+                        for (var upload : uploads) {
+                            hashes.put(upload.name(), upload.hash());
+                        }
+                        return transformationManager.getResultCacheKey(selected, hashes, format);
+                    })
+                    .onFailure(err -> fail(ctx, err, "Error applying transformation"))
+                    .onSuccess(cacheKey -> {
+                        String etag = cacheKey == null ? null : "\"" + cacheKey + "\"";
+                        if (etag != null && matchesETag(ctx.request().getHeader("If-None-Match"), etag)) {
+                            ctx.response().putHeader("ETag", etag).setStatusCode(304).end();
+                            return;
+                        }
+                        applyUploads(ctx, selected, inputs, format, cacheKey);
+                    });
             }
         });
 
+        // Apply a transformation to each uploaded model (or set of models), streaming each result
+        router.post("/transformation/:idOrName/apply/batch").handler(ctx -> {
+            String idOrName = ctx.pathParam("idOrName");
+            Transformation transformation;
+            try {
+                transformation = transformationManager.getTransformationById(Integer.parseInt(idOrName));
+            } catch (NumberFormatException e) {
+                transformation = transformationManager.getTransformationByName(idOrName);
+            }
+            if (transformation == null) {
+                ctx.response()
+                    .setStatusCode(404)
+                    .end("Transformation not found with ID or name: " + idOrName);
+                return;
+            }
+
+            Transformation selected = transformation;
+            List<ModelUpload> uploads = ModelUpload.of(ctx);
+            // zip archives are listed on the worker pool, like any other read of the uploads
+            this.<BatchInputs>execute(ctx, () -> BatchInputs.of(selected, uploads)).onComplete(ar -> {
+                if (ar.failed()) {
+                    if (ar.cause() instanceof IllegalArgumentException || ar.cause() instanceof IOException) {
+                        ctx.response().setStatusCode(400).end("Invalid batch: " + ar.cause().getMessage());
+                    } else {
+                        fail(ctx, ar.cause(), "Error reading the batch");
+                    }
+                    return;
+                }
+                BatchInputs batch = ar.result();
+                BatchSink sink = new BatchSink(ctx.response().setChunked(true), batch.getNames(), responseFormat(ctx));
+                BatchExecution execution = new BatchExecution(server, executionService, requestTimeout(ctx));
+                ctx.response().closeHandler(v -> execution.cancel());
+                execution.run(batch.size(), index -> transformationManager.runTransformation(selected, batch.get(index)),
+                        sink)
+                    .onSuccess(v -> sink.end())
+                    .onFailure(err -> fail(ctx, err, "Error applying transformation"));
+            });
+        });
+
         // Apply a chain of transformations 
         router.post("/transformation/chain").handler(ctx -> {
             try {
@@ -303,20 +426,19 @@ public class Main {
                 List<String> chainedTransformations = jsonArray.stream()
                         .map(Object::toString)
                         .collect(Collectors.toList());
+                if (chainedTransformations.isEmpty()) {
+                    ctx.response().setStatusCode(400).end("Missing or empty transformation chain");
+                    return;
+                }
 
                 // Get the uploaded file
-                List<FileUpload> uploads = ctx.fileUploads();
+                List<ModelUpload> uploads = ModelUpload.of(ctx);
                 if (uploads.size() != 1) {
                     ctx.response().setStatusCode(400).end("Exactly one input file required");
                     return;
                 }
 
-                // Apply the chain of transformations
-                String result = transformationManager.applyTransformationChain(
-                        chainedTransformations,
-                        uploads.get(0).uploadedFileName());
-
-                ctx.response().setStatusCode(200).send(result);
+                applyChain(ctx, chainedTransformations, uploads.get(0));
             } catch (Exception e) {
                 ctx.response()
                         .setStatusCode(500)
@@ -324,6 +446,45 @@ public class Main {
             }
         });
 
+        // Apply a chain of transformations to each uploaded model, as a pipeline
+        router.post("/transformation/chain/batch").handler(ctx -> {
+            String transformationChainStr = ctx.request().getFormAttribute("transformationChain");
+            if (transformationChainStr == null || transformationChainStr.isEmpty()) {
+                ctx.response().setStatusCode(400).end("Missing or empty transformation chain");
+                return;
+            }
+
+            List<Transformation> chain;
+            try {
+                chain = transformationManager.resolveChain(new JsonArray(transformationChainStr).stream()
+                        .map(Object::toString)
+                        .collect(Collectors.toList()));
+            } catch (Exception e) {
+                ctx.response().setStatusCode(400).end("Invalid transformation chain: " + e.getMessage());
+                return;
+            }
+
+            List<ModelUpload> uploads = ModelUpload.of(ctx);
+            if (uploads.isEmpty()) {
+                ctx.response().setStatusCode(400).end("At least one input file required");
+                return;
+            }
+
+            // one part per output model, streamed as soon as its model leaves the chain
+            BatchSink sink = new BatchSink(ctx.response().setChunked(true),
+                    uploads.stream().map(ModelUpload::fileName).collect(Collectors.toList()),
+                    responseFormat(ctx));
+            List<ModelInput> inputs = uploads.stream()
+                    .map(ModelUpload::input)
+                    .collect(Collectors.toList());
+            ChainPipeline pipeline = new ChainPipeline(server, executionService, transformationManager, chain,
+                    requestTimeout(ctx));
+            ctx.response().closeHandler(v -> pipeline.cancel());
+            pipeline.run(inputs, sink)
+                .onSuccess(v -> sink.end())
+                .onFailure(err -> fail(ctx, err, "Error applying transformation chain: " + err.getMessage()));
+        });
+
         // delete transformation by name or id
 
         // router.delete("/transformation/:idOrName").handler(ctx -> {
@@ -338,50 +499,30 @@ public class Main {
 
         //Transformations grouped by their input metamodels
         router.get("/transformations/byInputMetamodel").handler(ctx -> {
-            List<Transformation> allTransformations = transformationManager.getAllTransformations();
-            Map<String, List<String>> categorizedTransformations = new HashMap<>();
-            
-            // First, categorize all transformations
-            for (Transformation transformation : allTransformations) {
-                if (transformation.inputMetamodels == null || transformation.inputMetamodels.isEmpty()) {
-                    continue;
-                }
-                
-                for (NamedFile inputMetamodel : transformation.inputMetamodels) {
-                    // Skip if path is null or empty
-                    if (inputMetamodel.path == null || inputMetamodel.path.isEmpty()) {
-                        continue;
-                    }
-                    
-                    // Get the filename from the path
-                    String fileName = new File(inputMetamodel.path).getName();
-                    // Get metamodel name (remove .ecore extension)
-                    String metamodelName = fileName.replace(".ecore", "");
-                    
-                    if (!categorizedTransformations.containsKey(metamodelName)) {
-                        categorizedTransformations.put(metamodelName, new ArrayList<>());
-                    }
-                    categorizedTransformations.get(metamodelName).add(transformation.name);
-                }
-            }
-            
-            // Filter to keep only metamodels with more than 2 transformations
-            Map<String, List<String>> filteredTransformations = categorizedTransformations.entrySet().stream()
-                .filter(entry -> entry.getValue().size() > 2)
-                .collect(Collectors.toMap(
-                    Map.Entry::getKey,
-                    Map.Entry::getValue
-                ));
-            
+            // metamodels read by more than 2 transformations
+            Map<String, List<String>> filteredTransformations =
+                transformationManager.getTransformationsByInputMetamodel(2);
             ctx.json(filteredTransformations);
         });
 
         server.createHttpServer().requestHandler(router).listen(8080).onComplete(result -> {
             if (result.succeeded()) {
-                System.out.println("Server started on port 8080");
+                Log.info("Server started on port 8080");
+                if (Config.getBoolean("ATL_POOL_WARMUP", true)) {
+                    // requests are served meanwhile, a transformation not warmed up yet is prepared on demand
+                    warmup.start();
+                } else {
+                    warmup.skip();
+                }
+                if (Config.getBoolean("ATL_WATCH_CATALOG", true)) {
+                    try {
+                        transformationManager.watchTransformations();
+                    } catch (IOException e) {
+                        Log.error("Cannot watch the transformation folders: " + e.getMessage());
+                    }
+                }
             } else {
-                System.err.println("Failed to start server: " + result.cause().getMessage());
-                result.cause().printStackTrace();
+                Log.error("Failed to start server: " + result.cause().getMessage(), result.cause());
             }
         });
 
@@ -402,30 +543,142 @@ public class Main {
 
         
 
-    // Highlight the search term in the content and return a context around it
-    private static String highlightSearchTerm(String content, String searchTerm) {
+    // Run a blocking task on the worker pool, the optional "timeout" parameter (in ms) can only shorten the default
+    private <T> Future<T> execute(RoutingContext ctx, Callable<T> task) {
+        ExecutionService.Job<T> job = executionService.submit(task, requestTimeout(ctx));
+        // no need to keep working for a client that went away
+        ctx.response().closeHandler(v -> job.cancel());
+        return job.future();
+    }
 
-        int index = content.toLowerCase().indexOf(searchTerm.toLowerCase());
-        if (index == -1) return "";       
-        // Extract a cleaner context (about 50 chars before and after)
-        int contextStart = Math.max(0, index - 50);
-        int contextEnd = Math.min(content.length(), index + searchTerm.length() + 50);
-        
-        // Find the start of the current line
-        while (contextStart > 0 && content.charAt(contextStart) != '\n') {
-            contextStart--;
+    // Apply a transformation to uploaded models, streaming its outputs; the ETag is only sent with them
+    private void applyUploads(RoutingContext ctx, Transformation transformation, Map<String, ModelInput> inputs,
+            ModelFormat format, String cacheKey) {
+        // outputs are streamed from the worker while they are serialized
+        HttpServerResponse response = ctx.response().setChunked(true);
+        ResponseSink sink = new ResponseSink(response, transformation.outputMetamodels.size() > 1, format);
+        if (cacheKey != null) {
+            sink.setETag("\"" + cacheKey + "\"");
         }
-        
-        // Find the end of the current line
-        while (contextEnd < content.length() && content.charAt(contextEnd) != '\n') {
-            contextEnd++;
+        this.<Void>execute(ctx, () -> {
+                transformationManager.applyTransformation(transformation, inputs, sink, format, cacheKey);
+                return null;
+            })
+            .onSuccess(v -> sink.end())
+            .onFailure(err -> fail(ctx, err, "Error applying transformation"));
+    }
+
+    // Apply a chain of transformations to an uploaded model, streaming the final output
+    private void applyChain(RoutingContext ctx, List<String> chainedTransformations, ModelUpload upload) {
+        HttpServerResponse response = ctx.response().setChunked(true);
+        Transformation last = transformationManager.getTransformationByName(
+                chainedTransformations.get(chainedTransformations.size() - 1));
+        ResponseSink sink = new ResponseSink(response, last != null && last.outputMetamodels.size() > 1,
+                responseFormat(ctx));
+        this.<Void>execute(ctx, () -> {
+                try (ChainResult chain = transformationManager.applyTransformationChain(
+                        chainedTransformations,
+                        upload.input())) {
+                    // per-step execution times, known before the output is streamed
+                    response.putHeader("Server-Timing", chain.getServerTiming());
+                    chain.getResult().save(sink, sink.getFormat());
+                }
+                return null;
+            })
+            .onSuccess(v -> sink.end())
+            .onFailure(err -> fail(ctx, err, "Error applying transformation chain: " + err.getMessage()));
+    }
+
+    // The chain between the "source" and "target" metamodels of the request, or null once an error was sent
+    private TransformationGraph.Chain findChain(RoutingContext ctx) {
+        String source = ctx.request().getParam("source");
+        String target = ctx.request().getParam("target");
+        if (source == null || target == null) {
+            ctx.response().setStatusCode(400).end("Both source and target metamodels are required");
+            return null;
+        }
+        TransformationGraph.Chain chain = transformationManager.findChain(source, target,
+                Boolean.parseBoolean(ctx.request().getParam("weighted")));
+        if (chain == null) {
+            ctx.response().setStatusCode(404).end("No chain of transformations found from " + source + " to " + target);
+        }
+        return chain;
+    }
+
+    // Format of the output models: the "format" query parameter (xmi or binary), or the Accept header
+    private static ModelFormat responseFormat(RoutingContext ctx) {
+        String format = ctx.request().getParam("format");
+        if (format != null) {
+            return "binary".equalsIgnoreCase(format) ? ModelFormat.BINARY : ModelFormat.XMI;
+        }
+        String accept = ctx.request().getHeader("Accept");
+        if (accept != null && accept.contains(ModelFormat.BINARY.getContentType())) {
+            return ModelFormat.BINARY;
+        }
+        return ModelFormat.XMI;
+    }
+
+    // Whether an If-None-Match header lists the given entity tag
+    private static boolean matchesETag(String ifNoneMatch, String etag) {
+        if (ifNoneMatch == null) return false;
+        for (String candidate : ifNoneMatch.split(",")) {
+            candidate = candidate.trim();
+            if (candidate.startsWith("W/")) {
+                candidate = candidate.substring(2);
+            }
+            if (candidate.equals("*") || candidate.equals(etag)) return true;
+        }
+        return false;
+    }
+
+    // The "timeout" query parameter can only lower the default timeout
+    private long requestTimeout(RoutingContext ctx) {
+        long timeout = executionService.getDefaultTimeout();
+        String timeoutParam = ctx.request().getParam("timeout");
+        if (timeoutParam != null) {
+            try {
+                long requested = Long.parseLong(timeoutParam);
+                if (requested > 0 && (timeout <= 0 || requested < timeout)) {
+                    timeout = requested;
+                }
+            } catch (NumberFormatException e) {
+                // keep the default timeout
+            }
+        }
+        return timeout;
+    }
+
+    // Map a failed execution to the matching HTTP status
+    private static void fail(RoutingContext ctx, Throwable err, String message) {
+        if (ctx.response().closed() || ctx.response().ended()) {
+            return;
+        }
+        if (ctx.response().headWritten()) {
+            // failed while streaming, the client must not take a truncated output for a complete one
+            Log.error("Failed while streaming the output", err);
+            ctx.response().reset();
+            return;
+        }
+        // errors are plain text, whatever the content type prepared for the output
+        ctx.response().headers().remove("Content-Type");
+        if (err instanceof RejectedExecutionException) {
+            ctx.response()
+                .setStatusCode(503)
+                .putHeader("Retry-After", "1")
+                .end("Server busy, too many transformations queued");
+        } else if (err instanceof TimeoutException) {
+            ctx.response().setStatusCode(504).end("Transformation timed out");
+        } else if (err instanceof CancellationException) {
+            ctx.response().setStatusCode(503).end("Transformation cancelled");
+        } else {
+            Log.error(message, err);
+            ctx.response().setStatusCode(500).end(message);
         }
-        
-        String context = content.substring(contextStart, contextEnd).trim();
-        return context.replaceAll("(?i)" + Pattern.quote(searchTerm), "**$0**");
     }
 
     public static void main(String[] args) {
+        // keep what this run compiled and parsed for the next start, e.g. before a container is stopped
+        Runtime.getRuntime().addShutdownHook(new Thread(() -> SnapshotStore.getInstance().save(), "atl-snapshot"));
         new Main().start();
     }
 }
\ No newline at end of file
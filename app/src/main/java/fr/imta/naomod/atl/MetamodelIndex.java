@@ -0,0 +1,202 @@
+package fr.imta.naomod.atl;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * Transformations by the metamodels they read and write, part of a
+ * {@link TransformationRegistry} snapshot.
+ *
+ * A metamodel is indexed by its path, its file name, its file name without
+ * extension and the nsURI of its packages, all in lower case. An index is
+ * only changed while it is not published yet: writers change a copy, which
+ * shares the unchanged entries with the original.
+ */
+class MetamodelIndex {
+    private static final Pattern NS_URI = Pattern.compile("nsURI=\"([^\"]+)\"");
+
+    /**
+     * Keys of the input and output metamodels of a transformation, read from
+     * its files before it is added.
+     */
+    record Keys(List<Set<String>> inputs, List<Set<String>> outputs) {}
+
+    // key -> names of the transformations, the sets of a published index are never modified
+    private final Map<String, Set<String>> inputs;
+    private final Map<String, Set<String>> outputs;
+    // metamodel name (file name without .ecore) -> names of the transformations reading it
+    private final Map<String, Set<String>> byInputName;
+    // sets created by this index, the others are shared with the index it was copied from
+    private final Set<Set<String>> owned = Collections.newSetFromMap(new IdentityHashMap<>());
+    // computed once per published index
+    private volatile Groups groups;
+
+    // a grouping by input metamodel and the minimum count it was computed for, published at once
+    private record Groups(int minCount, Map<String, List<String>> byName) {}
+
+    MetamodelIndex() {
+        this(new HashMap<>(), new HashMap<>(), new HashMap<>());
+    }
+
+    private MetamodelIndex(Map<String, Set<String>> inputs, Map<String, Set<String>> outputs,
+            Map<String, Set<String>> byInputName) {
+        this.inputs = inputs;
+        this.outputs = outputs;
+        this.byInputName = byInputName;
+    }
+
+    MetamodelIndex copy() {
+        return new MetamodelIndex(new HashMap<>(inputs), new HashMap<>(outputs), new HashMap<>(byInputName));
+    }
+
+    static Keys keys(Transformation transformation) {
+        List<Set<String>> inputKeys = new ArrayList<>();
+        for (NamedFile metamodel : transformation.inputMetamodels) {
+            inputKeys.add(keys(transformation, metamodel));
+        }
+        List<Set<String>> outputKeys = new ArrayList<>();
+        for (NamedFile metamodel : transformation.outputMetamodels) {
+            outputKeys.add(keys(transformation, metamodel));
+        }
+        return new Keys(inputKeys, outputKeys);
+    }
+
+    void add(Transformation transformation, Keys keys) {
+        for (Set<String> metamodelKeys : keys.inputs) {
+            for (String key : metamodelKeys) {
+                put(inputs, key, transformation.name);
+            }
+        }
+        for (NamedFile metamodel : transformation.inputMetamodels) {
+            String name = metamodelName(metamodel);
+            if (name != null) {
+                put(byInputName, name, transformation.name);
+            }
+        }
+        for (Set<String> metamodelKeys : keys.outputs) {
+            for (String key : metamodelKeys) {
+                put(outputs, key, transformation.name);
+            }
+        }
+    }
+
+    void remove(Transformation transformation) {
+        removeName(inputs, transformation.name);
+        removeName(outputs, transformation.name);
+        removeName(byInputName, transformation.name);
+    }
+
+    /**
+     * Names of the transformations reading a metamodel matching the query.
+     */
+    Set<String> findByInput(String query) {
+        return find(inputs, query);
+    }
+
+    /**
+     * Names of the transformations writing a metamodel matching the query.
+     */
+    Set<String> findByOutput(String query) {
+        return find(outputs, query);
+    }
+
+    /**
+     * Names of the transformations by the name of the metamodels they read,
+     * for the metamodels read by more than {@code minCount} of them.
+     */
+    Map<String, List<String>> groupByInput(int minCount) {
+        Groups cached = groups;
+        if (cached != null && cached.minCount == minCount) {
+            return cached.byName;
+        }
+        Map<String, List<String>> computed = new TreeMap<>();
+        for (var entry : byInputName.entrySet()) {
+            if (entry.getValue().size() > minCount) {
+                computed.put(entry.getKey(), List.copyOf(entry.getValue()));
+            }
+        }
+        computed = Collections.unmodifiableMap(computed);
+        groups = new Groups(minCount, computed);
+        return computed;
+    }
+
+    // the keys containing the query like the paths did before, the exact key first: "class" finds SubClass.ecore too
+    private static Set<String> find(Map<String, Set<String>> index, String query) {
+        String key = query.toLowerCase(Locale.ROOT);
+        Set<String> names = new LinkedHashSet<>(index.getOrDefault(key, Set.of()));
+        for (var entry : index.entrySet()) {
+            if (entry.getKey().contains(key)) {
+                names.addAll(entry.getValue());
+            }
+        }
+        return names;
+    }
+
+    private void put(Map<String, Set<String>> index, String key, String name) {
+        writable(index, key).add(name);
+    }
+
+    private void removeName(Map<String, Set<String>> index, String name) {
+        for (var entry : new ArrayList<>(index.entrySet())) {
+            if (!entry.getValue().contains(name)) continue;
+            Set<String> names = writable(index, entry.getKey());
+            names.remove(name);
+            if (names.isEmpty()) {
+                index.remove(entry.getKey());
+            }
+        }
+    }
+
+    // The names of a key, copied the first time this index changes them
+    private Set<String> writable(Map<String, Set<String>> index, String key) {
+        Set<String> names = index.get(key);
+        if (names == null || !owned.contains(names)) {
+            names = names == null ? new LinkedHashSet<>() : new LinkedHashSet<>(names);
+            owned.add(names);
+            index.put(key, names);
+        }
+        return names;
+    }
+
+    private static String metamodelName(NamedFile metamodel) {
+        if (metamodel.path == null || metamodel.path.isEmpty()) return null;
+        return Path.of(metamodel.path).getFileName().toString().replace(".ecore", "");
+    }
+
+    private static Set<String> keys(Transformation transformation, NamedFile metamodel) {
+        Set<String> keys = new LinkedHashSet<>();
+        if (metamodel.path == null || metamodel.path.isEmpty()) return keys;
+
+        String fileName = Path.of(metamodel.path).getFileName().toString();
+        keys.add(metamodel.path.toLowerCase(Locale.ROOT));
+        keys.add(fileName.toLowerCase(Locale.ROOT));
+        int dot = fileName.lastIndexOf('.');
+        if (dot > 0) {
+            keys.add(fileName.substring(0, dot).toLowerCase(Locale.ROOT));
+        }
+
+        // nsURIs of the root package and its subpackages, without parsing the whole metamodel
+        try {
+            Matcher matcher = NS_URI.matcher(Files.readString(Path.of(transformation.folderPath, metamodel.path)));
+            while (matcher.find()) {
+                keys.add(matcher.group(1).toLowerCase(Locale.ROOT));
+            }
+        } catch (IOException | RuntimeException e) {
+            // indexed by name only
+        }
+        return keys;
+    }
+}
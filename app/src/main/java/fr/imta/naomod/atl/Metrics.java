@@ -0,0 +1,241 @@
+package fr.imta.naomod.atl;
+
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.DoubleAdder;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Supplier;
+
+/**
+ * Latency histograms and gauges of the server, written in the Prometheus text
+ * format by {@link #scrape()}.
+ *
+ * The phases of an execution are timed where they happen, in the runners and
+ * caches, and tagged with the transformation and compiler of the execution
+ * the thread works on, set by {@link #enter(Transformation)}. Gauges are read
+ * when scraped.
+ */
+public class Metrics {
+    private static final Metrics instance = new Metrics();
+
+    // upper bounds of the histogram buckets, in seconds
+    private static final double[] BUCKETS = {
+        0.001, 0.0025, 0.005, 0.01, 0.025, 0.05, 0.1, 0.25, 0.5, 1, 2.5, 5, 10, 30, 60, 300
+    };
+
+    public enum Phase {
+        // parsing an input model
+        UPLOAD_PARSE,
+        // parsing a metamodel and binding it to an execution environment
+        METAMODEL_LOAD,
+        // compiling an ATL module
+        COMPILE,
+        // loading a module in an execution environment, compilation included
+        MODULE_LOAD,
+        // execEnv.run (EMFTVM) or launcher.launch (EMFVM)
+        RUN,
+        // serializing the output models
+        OUTPUT_SAVE;
+
+        String label() {
+            return name().toLowerCase();
+        }
+    }
+
+    // phase is null for a whole execution
+    private record Key(String phase, String transformation, String compiler) {}
+
+    private static class Histogram {
+        final LongAdder[] counts = new LongAdder[BUCKETS.length + 1];
+        final DoubleAdder sum = new DoubleAdder();
+
+        Histogram() {
+            for (int i = 0; i < counts.length; i++) {
+                counts[i] = new LongAdder();
+            }
+        }
+
+        void record(double seconds) {
+            int bucket = 0;
+            while (bucket < BUCKETS.length && seconds > BUCKETS[bucket]) {
+                bucket++;
+            }
+            counts[bucket].increment();
+            sum.add(seconds);
+        }
+    }
+
+    private record Gauge(String help, Supplier<?> value) {}
+
+    private final Map<Key, Histogram> phases = new ConcurrentHashMap<>();
+    private final Map<Key, Histogram> executions = new ConcurrentHashMap<>();
+    // by name
+    private final Map<String, Gauge> gauges = new ConcurrentHashMap<>();
+    private final ThreadLocal<Frame> current = new ThreadLocal<>();
+
+    public static Metrics getInstance() {
+        return instance;
+    }
+
+    /**
+     * Tags the phases timed by this thread with the transformation until the
+     * returned scope is closed.
+     */
+    public Scope enter(Transformation transformation) {
+        Frame frame = new Frame(transformation, current.get());
+        current.set(frame);
+        return frame;
+    }
+
+    public interface Scope extends AutoCloseable {
+        /**
+         * Time spent in the {@link Phase#RUN} phase since the scope was
+         * entered, in nanoseconds.
+         */
+        long getRunNanos();
+
+        @Override
+        void close();
+    }
+
+    private class Frame implements Scope {
+        final Transformation transformation;
+        final Frame previous;
+        long runNanos;
+
+        Frame(Transformation transformation, Frame previous) {
+            this.transformation = transformation;
+            this.previous = previous;
+        }
+
+        @Override
+        public long getRunNanos() {
+            return runNanos;
+        }
+
+        @Override
+        public void close() {
+            current.set(previous);
+        }
+    }
+
+    /**
+     * Records the duration of a phase of the execution this thread works on.
+     */
+    public void record(Phase phase, long nanos) {
+        Frame frame = current.get();
+        if (frame != null && phase == Phase.RUN) {
+            frame.runNanos += nanos;
+        }
+        Transformation transformation = frame == null ? null : frame.transformation;
+        phases.computeIfAbsent(key(phase.label(), transformation), k -> new Histogram()).record(nanos / 1e9);
+    }
+
+    /**
+     * Records the duration of a whole execution, outputs included.
+     */
+    public void recordExecution(Transformation transformation, long nanos) {
+        executions.computeIfAbsent(key(null, transformation), k -> new Histogram()).record(nanos / 1e9);
+    }
+
+    /**
+     * Registers a gauge read on each scrape. A supplier of a map exposes one
+     * gauge per numeric entry (nested maps included), named after its path.
+     */
+    public void gauge(String name, String help, Supplier<?> value) {
+        gauges.put(name, new Gauge(help, value));
+    }
+
+    public String scrape() {
+        StringBuilder out = new StringBuilder();
+        writeHistograms(out, "atl_phase_duration_seconds", "Duration of each phase of the executions", phases);
+        writeHistograms(out, "atl_execution_duration_seconds", "Duration of the executions", executions);
+        for (var gauge : new TreeMap<>(gauges).entrySet()) {
+            Object value;
+            try {
+                value = gauge.getValue().value.get();
+            } catch (RuntimeException e) {
+                continue;
+            }
+            writeGauges(out, gauge.getKey(), gauge.getValue().help, value);
+        }
+        return out.toString();
+    }
+
+    private static Key key(String phase, Transformation transformation) {
+        return transformation == null
+            ? new Key(phase, "", "")
+            : new Key(phase, String.valueOf(transformation.name), String.valueOf(transformation.compiler));
+    }
+
+    private static void writeHistograms(StringBuilder out, String name, String help, Map<Key, Histogram> histograms) {
+        out.append("# HELP ").append(name).append(' ').append(help).append('\n');
+        out.append("# TYPE ").append(name).append(" histogram\n");
+        for (var entry : histograms.entrySet()) {
+            StringBuilder labels = new StringBuilder();
+            if (entry.getKey().phase != null) {
+                label(labels, "phase", entry.getKey().phase).append(',');
+            }
+            label(labels, "transformation", entry.getKey().transformation).append(',');
+            label(labels, "compiler", entry.getKey().compiler);
+
+            Histogram histogram = entry.getValue();
+            long count = 0;
+            for (int i = 0; i < histogram.counts.length; i++) {
+                count += histogram.counts[i].sum();
+                String bound = i < BUCKETS.length ? Double.toString(BUCKETS[i]) : "+Inf";
+                out.append(name).append("_bucket{").append(labels).append(",le=\"").append(bound).append("\"} ")
+                    .append(count).append('\n');
+            }
+            out.append(name).append("_sum{").append(labels).append("} ").append(histogram.sum.sum()).append('\n');
+            out.append(name).append("_count{").append(labels).append("} ").append(count).append('\n');
+        }
+    }
+
+    private static void writeGauges(StringBuilder out, String name, String help, Object value) {
+        if (value instanceof Map<?, ?> map) {
+            for (var entry : map.entrySet()) {
+                writeGauges(out, name + "_" + snakeCase(String.valueOf(entry.getKey())), help, entry.getValue());
+            }
+            return;
+        }
+        double number;
+        if (value instanceof Number n) {
+            number = n.doubleValue();
+        } else if (value instanceof Boolean b) {
+            number = b ? 1 : 0;
+        } else {
+            return;
+        }
+        out.append("# HELP ").append(name).append(' ').append(help).append('\n');
+        out.append("# TYPE ").append(name).append(" gauge\n");
+        out.append(name).append(' ').append(number).append('\n');
+    }
+
+    private static StringBuilder label(StringBuilder labels, String name, String value) {
+        labels.append(name).append("=\"");
+        for (char c : value.toCharArray()) {
+            switch (c) {
+                case '\\' -> labels.append("\\\\");
+                case '"' -> labels.append("\\\"");
+                case '\n' -> labels.append("\\n");
+                default -> labels.append(c);
+            }
+        }
+        return labels.append('"');
+    }
+
+    // hitRate -> hit_rate, EMFTVM -> emftvm
+    private static String snakeCase(String name) {
+        StringBuilder snake = new StringBuilder();
+        for (int i = 0; i < name.length(); i++) {
+            char c = name.charAt(i);
+            if (Character.isUpperCase(c) && i > 0 && Character.isLowerCase(name.charAt(i - 1))) {
+                snake.append('_');
+            }
+            snake.append(Character.isLetterOrDigit(c) ? Character.toLowerCase(c) : '_');
+        }
+        return snake.toString();
+    }
+}
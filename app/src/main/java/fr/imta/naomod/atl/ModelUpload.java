@@ -0,0 +1,110 @@
+package fr.imta.naomod.atl;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+
+import fr.imta.naomod.atl.runners.ModelFormat;
+import fr.imta.naomod.atl.runners.ModelInput;
+import fr.imta.naomod.atl.runners.ResultCache;
+import fr.imta.naomod.atl.runners.ZipEntries;
+import io.netty.buffer.ByteBufInputStream;
+import io.vertx.core.buffer.Buffer;
+import io.vertx.ext.web.FileUpload;
+import io.vertx.ext.web.RoutingContext;
+
+/**
+ * A model uploaded with a request, either written to disk by the
+ * BodyHandler or kept in memory by the {@link StreamingUploadHandler}.
+ */
+public class ModelUpload {
+    static final String CONTEXT_KEY = "modelUploads";
+
+    private final String name;
+    private final String fileName;
+    private final String contentType;
+    private final String path;
+    private final Buffer content;
+
+    private ModelUpload(String name, String fileName, String contentType, String path, Buffer content) {
+        this.name = name;
+        this.fileName = fileName;
+        this.contentType = contentType;
+        this.path = path;
+        this.content = content;
+    }
+
+    static ModelUpload inMemory(String name, String fileName, String contentType, Buffer content) {
+        return new ModelUpload(name, fileName, contentType, null, content);
+    }
+
+    /**
+     * Models uploaded with the request, in the order of the form.
+     */
+    public static List<ModelUpload> of(RoutingContext ctx) {
+        List<ModelUpload> streamed = ctx.get(CONTEXT_KEY);
+        if (streamed != null) {
+            return streamed;
+        }
+        List<ModelUpload> uploads = new ArrayList<>();
+        for (FileUpload upload : ctx.fileUploads()) {
+            uploads.add(new ModelUpload(upload.name(), upload.fileName(), upload.contentType(),
+                upload.uploadedFileName(), null));
+        }
+        return uploads;
+    }
+
+    /**
+     * Name of the form field.
+     */
+    public String name() {
+        return name;
+    }
+
+    /**
+     * Name of the file on the client side, or the field name if it has none.
+     */
+    public String fileName() {
+        return fileName != null && !fileName.isEmpty() ? fileName : name;
+    }
+
+    public boolean isZip() {
+        return fileName().toLowerCase().endsWith(".zip");
+    }
+
+    /**
+     * Format of the model, told by the content type of the part or by the
+     * extension of the file.
+     */
+    public ModelFormat format() {
+        return ModelFormat.of(contentType, fileName);
+    }
+
+    public ModelInput input() {
+        return path != null ? ModelInput.file(path, format()) : ModelInput.stream(this::open, format());
+    }
+
+    /**
+     * The models stored in this upload, when it is a zip archive.
+     */
+    public List<ZipEntries.Entry> zipEntries() throws IOException {
+        return ZipEntries.list(this::open, path != null ? Files.size(Path.of(path)) : content.length());
+    }
+
+    /**
+     * Hash of the content of the upload.
+     */
+    public String hash() throws IOException {
+        try (InputStream in = open()) {
+            return ResultCache.hash(in);
+        }
+    }
+
+    // reads the request buffer in place, without copying it
+    InputStream open() throws IOException {
+        return path != null ? Files.newInputStream(Path.of(path)) : new ByteBufInputStream(content.getByteBuf());
+    }
+}
@@ -0,0 +1,190 @@
+package fr.imta.naomod.atl;
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.UUID;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import fr.imta.naomod.atl.runners.ModelFormat;
+import fr.imta.naomod.atl.runners.OutputSink;
+import io.vertx.core.buffer.Buffer;
+import io.vertx.core.http.HttpServerResponse;
+
+/**
+ * Streams output models to a chunked HTTP response, from a worker thread.
+ *
+ * Models are written by chunks while they are serialized. When the response
+ * write queue is full the worker waits for it to drain, so the memory used
+ * does not depend on the size of the outputs.
+ *
+ * A single output is sent as the response body. Several outputs are sent as a
+ * multipart/mixed response with one part per output model, named after it,
+ * each part being written as soon as its model is serialized.
+ */
+public class ResponseSink implements OutputSink {
+    private static final int CHUNK_SIZE = 64 * 1024;
+    private final HttpServerResponse response;
+    private final String boundary;
+    private final ModelFormat format;
+    // sent with the outputs only, an error answered instead has none
+    private volatile String etag;
+
+    /**
+     * Sets the content type of the response, so it must be created before
+     * anything is written to it.
+     *
+     * @param multipart send several outputs as a multipart response
+     * @param format    format the models are written in
+     */
+    public ResponseSink(HttpServerResponse response, boolean multipart, ModelFormat format) {
+        this.response = response;
+        this.boundary = multipart ? "atl-output-" + UUID.randomUUID() : null;
+        this.format = format;
+        response.putHeader("Content-Type", multipart
+            ? "multipart/mixed; boundary=" + boundary
+            : format.getContentType());
+    }
+
+    public ModelFormat getFormat() {
+        return format;
+    }
+
+    /**
+     * Identifies the outputs, the header being added when they start being
+     * written.
+     */
+    public void setETag(String etag) {
+        this.etag = etag;
+    }
+
+    private void writeHead() {
+        if (etag != null && !response.headWritten()) {
+            response.putHeader("ETag", etag);
+        }
+    }
+
+    @Override
+    public OutputStream open(String name) throws IOException {
+        if (boundary == null) {
+            return new ResponseOutputStream();
+        }
+        return openPart(format.getContentType(), name, name + "." + format.getExtension());
+    }
+
+    /**
+     * Opens a new part of a multipart response. Parts are written one after
+     * the other: callers writing from several threads must synchronize.
+     *
+     * @param headers additional header lines of the part, like "Name: value"
+     */
+    public OutputStream openPart(String contentType, String name, String filename, String... headers)
+            throws IOException {
+        if (boundary == null) {
+            throw new IllegalStateException("Not a multipart response");
+        }
+        StringBuilder header = new StringBuilder()
+            .append("--").append(boundary).append("\r\n")
+            .append("Content-Type: ").append(contentType).append("\r\n")
+            .append("Content-Disposition: attachment; name=\"").append(name).append('"');
+        if (filename != null) {
+            header.append("; filename=\"").append(filename).append('"');
+        }
+        header.append("\r\n");
+        for (String line : headers) {
+            header.append(line).append("\r\n");
+        }
+        header.append("\r\n");
+
+        ResponseOutputStream stream = new ResponseOutputStream();
+        stream.write(header.toString().getBytes(StandardCharsets.UTF_8));
+        return stream;
+    }
+
+    /**
+     * Ends the response, once all the outputs are written.
+     */
+    public void end() {
+        writeHead();
+        if (boundary != null) {
+            response.end("--" + boundary + "--\r\n");
+        } else {
+            response.end();
+        }
+    }
+
+    private class ResponseOutputStream extends OutputStream {
+        private final byte[] chunk = new byte[CHUNK_SIZE];
+        private int count;
+        private boolean closed;
+
+        @Override
+        public void write(int b) throws IOException {
+            if (count == chunk.length) {
+                writeChunk();
+            }
+            chunk[count++] = (byte) b;
+        }
+
+        @Override
+        public void write(byte[] b, int off, int len) throws IOException {
+            while (len > 0) {
+                if (count == chunk.length) {
+                    writeChunk();
+                }
+                int n = Math.min(len, chunk.length - count);
+                System.arraycopy(b, off, chunk, count, n);
+                count += n;
+                off += n;
+                len -= n;
+            }
+        }
+
+        @Override
+        public void flush() throws IOException {
+            writeChunk();
+        }
+
+        @Override
+        public void close() throws IOException {
+            if (closed) return;
+            closed = true;
+            if (boundary != null) {
+                write("\r\n".getBytes(StandardCharsets.UTF_8));
+            }
+            writeChunk();
+        }
+
+        private void writeChunk() throws IOException {
+            if (count == 0) return;
+            if (response.closed()) {
+                throw new IOException("Client closed the connection");
+            }
+            awaitDrain();
+            writeHead();
+            response.write(Buffer.buffer(Arrays.copyOf(chunk, count)));
+            count = 0;
+        }
+
+        private void awaitDrain() throws IOException {
+            if (!response.writeQueueFull()) return;
+
+            CountDownLatch drained = new CountDownLatch(1);
+            response.drainHandler(v -> drained.countDown());
+            try {
+                // the queue may have drained before the handler was set
+                while (response.writeQueueFull() && !drained.await(1, TimeUnit.SECONDS)) {
+                    if (response.closed()) {
+                        throw new IOException("Client closed the connection");
+                    }
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new InterruptedIOException("Interrupted while streaming the response");
+            }
+        }
+    }
+}
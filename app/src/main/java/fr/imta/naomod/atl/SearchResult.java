@@ -5,10 +5,15 @@ class SearchResult {
     public String name;
     public String atlFile;
     public String matchContext;
+    // line of the match context, from 1
+    public int line;
+    public double score;
 
-    public SearchResult(String name, String atlFiles, String matchContext) {
+    public SearchResult(String name, String atlFiles, String matchContext, int line, double score) {
         this.name = name;
         this.atlFile = atlFiles;
         this.matchContext = matchContext;
+        this.line = line;
+        this.score = score;
     }
 }
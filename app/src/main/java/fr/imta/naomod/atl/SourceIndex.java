@@ -0,0 +1,324 @@
+package fr.imta.naomod.atl;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * Inverted index of the ATL sources of the transformations, part of a
+ * {@link TransformationRegistry} snapshot.
+ *
+ * Sources are split into identifiers, which are indexed whole and by their
+ * camel case, underscore and digit separated parts, in lower case: rule
+ * Class2Table is found by "class2table", "class" and "table", and UML!Class
+ * by "uml" and "class". The names of the module, rules, helpers and queries
+ * weigh more than other occurrences. A query that matches no term this way is
+ * looked up within the indexed terms instead, so that "lational" still finds
+ * Relational; a query without any identifier, such as "->", finds nothing.
+ *
+ * Only the terms and the offset of each line are kept in memory: searching
+ * never scans the sources, only the line shown with each result is read.
+ *
+ * Like {@link MetamodelIndex}, an index is only changed while it is not
+ * published yet.
+ */
+class SourceIndex {
+    private static final Pattern IDENTIFIER = Pattern.compile("[A-Za-z_][A-Za-z0-9_]*");
+    private static final Pattern PARTS = Pattern.compile(
+        "_|(?<=[a-z0-9])(?=[A-Z])|(?<=[A-Za-z])(?=[0-9])|(?<=[0-9])(?=[A-Za-z])");
+    private static final Pattern DECLARATION = Pattern.compile(
+        "\\b(?:module|library|query|rule|def\\s*:)\\s*([A-Za-z_][A-Za-z0-9_]*)");
+    private static final double DECLARATION_WEIGHT = 3;
+    // a term only starting with a query term
+    private static final double PREFIX_WEIGHT = 0.5;
+    // a term only containing a query term
+    private static final double INFIX_WEIGHT = 0.25;
+    // longest match context read from a source
+    private static final int MAX_LINE_BYTES = 4096;
+
+    // line from 0 of the first occurrence of a term
+    record Posting(double weight, int line) {}
+
+    // an ATL source, with the byte offset of each line and the posting of each of its terms
+    record Document(String atlFile, Path file, int[] lineStarts, Map<String, Posting> terms) {}
+
+    // term -> posting by transformation name, the maps of a published index are never modified
+    private final TreeMap<String, Map<String, Posting>> postings;
+    private final Map<String, Document> documents;
+    // posting maps created by this index, the others are shared with the index it was copied from
+    private final Set<Map<String, Posting>> owned = Collections.newSetFromMap(new IdentityHashMap<>());
+
+    SourceIndex() {
+        this(new TreeMap<>(), new HashMap<>());
+    }
+
+    private SourceIndex(TreeMap<String, Map<String, Posting>> postings, Map<String, Document> documents) {
+        this.postings = postings;
+        this.documents = documents;
+    }
+
+    SourceIndex copy() {
+        return new SourceIndex(new TreeMap<>(postings), new HashMap<>(documents));
+    }
+
+    /**
+     * Reads and tokenizes the ATL source of a transformation before it is
+     * added, null if it has none.
+     */
+    static Document read(Transformation transformation) {
+        if (transformation.atlFile == null || transformation.atlFile.isEmpty()) return null;
+        Path file = Path.of(transformation.folderPath, transformation.atlFile);
+        byte[] bytes;
+        String content;
+        try {
+            bytes = Files.readAllBytes(file);
+            content = new String(bytes, StandardCharsets.UTF_8);
+        } catch (IOException | RuntimeException e) {
+            Log.error("Error reading file " + transformation.atlFile + ": " + e.getMessage());
+            return null;
+        }
+
+        // occurrences of each term, and the line of the first one
+        int[] lineOffsets = lineStarts(content);
+        Map<String, int[]> occurrences = new HashMap<>();
+        Map<String, Set<String>> identifierTerms = new HashMap<>();
+        Matcher identifiers = IDENTIFIER.matcher(content);
+        while (identifiers.find()) {
+            for (String term : identifierTerms.computeIfAbsent(identifiers.group(), SourceIndex::terms)) {
+                occurrences.computeIfAbsent(term, t -> new int[] {0, line(lineOffsets, identifiers.start())})[0]++;
+            }
+        }
+        Set<String> declared = new LinkedHashSet<>();
+        Matcher declarations = DECLARATION.matcher(content);
+        while (declarations.find()) {
+            declared.addAll(terms(declarations.group(1)));
+        }
+
+        Map<String, Posting> terms = new HashMap<>();
+        for (var term : occurrences.entrySet()) {
+            double weight = 1 + Math.log(term.getValue()[0]);
+            if (declared.contains(term.getKey())) {
+                weight *= DECLARATION_WEIGHT;
+            }
+            terms.put(term.getKey(), new Posting(weight, term.getValue()[1]));
+        }
+        return new Document(transformation.atlFile, file, lineStarts(bytes), terms);
+    }
+
+    void add(Transformation transformation, Document document) {
+        if (document == null) return;
+        for (var term : document.terms.entrySet()) {
+            writable(term.getKey()).put(transformation.name, term.getValue());
+        }
+        documents.put(transformation.name, document);
+    }
+
+    void remove(Transformation transformation) {
+        Document document = documents.remove(transformation.name);
+        if (document == null) return;
+        for (String term : document.terms.keySet()) {
+            Map<String, Posting> documentPostings = writable(term);
+            documentPostings.remove(transformation.name);
+            if (documentPostings.isEmpty()) {
+                postings.remove(term);
+            }
+        }
+    }
+
+    // The postings of a term, copied the first time this index changes them
+    private Map<String, Posting> writable(String term) {
+        Map<String, Posting> documentPostings = postings.get(term);
+        if (documentPostings == null || !owned.contains(documentPostings)) {
+            documentPostings = documentPostings == null ? new HashMap<>() : new HashMap<>(documentPostings);
+            owned.add(documentPostings);
+            postings.put(term, documentPostings);
+        }
+        return documentPostings;
+    }
+
+    /**
+     * The transformations whose source has every term of the query, or a
+     * term starting with it, best matches first. If there are none, the ones
+     * with a term containing each of them.
+     */
+    List<SearchResult> search(String query) {
+        List<String> queryTerms = new ArrayList<>();
+        Matcher identifiers = IDENTIFIER.matcher(query);
+        while (identifiers.find()) {
+            String term = identifiers.group().toLowerCase(Locale.ROOT);
+            if (!queryTerms.contains(term)) {
+                queryTerms.add(term);
+            }
+        }
+        if (queryTerms.isEmpty()) return List.of();
+
+        List<SearchResult> results = search(queryTerms, false);
+        return results.isEmpty() ? search(queryTerms, true) : results;
+    }
+
+    private List<SearchResult> search(List<String> queryTerms, boolean infix) {
+        Map<String, Hit> hits = null;
+        for (String queryTerm : queryTerms) {
+            Map<String, Hit> termHits = new HashMap<>();
+            // the terms starting with the query term are contiguous, the ones containing it are scanned for
+            Map<String, Map<String, Posting>> matching = infix
+                ? postings : postings.subMap(queryTerm, true, queryTerm + Character.MAX_VALUE, true);
+            for (var term : matching.entrySet()) {
+                double factor = factor(term.getKey(), queryTerm);
+                if (factor == 0) continue;
+                factor *= Math.log(1 + (double) documents.size() / term.getValue().size());
+                for (var posting : term.getValue().entrySet()) {
+                    termHits.computeIfAbsent(posting.getKey(), name -> new Hit())
+                        .add(posting.getValue().weight * factor, posting.getValue().line);
+                }
+            }
+            if (hits == null) {
+                hits = termHits;
+            } else {
+                hits.keySet().retainAll(termHits.keySet());
+                for (var hit : hits.entrySet()) {
+                    hit.getValue().add(termHits.get(hit.getKey()));
+                }
+            }
+            if (hits.isEmpty()) break;
+        }
+
+        List<SearchResult> results = new ArrayList<>();
+        for (var hit : hits.entrySet()) {
+            Document document = documents.get(hit.getKey());
+            int line = hit.getValue().line;
+            String context = highlight(readLine(document, line), queryTerms);
+            results.add(new SearchResult(hit.getKey(), document.atlFile, context, line + 1, hit.getValue().score));
+        }
+        return sorted(results);
+    }
+
+    // weight of a term matching a query term, 0 if it does not
+    private static double factor(String term, String queryTerm) {
+        if (term.equals(queryTerm)) return 1;
+        if (term.startsWith(queryTerm)) return PREFIX_WEIGHT;
+        return term.contains(queryTerm) ? INFIX_WEIGHT : 0;
+    }
+
+    private static List<SearchResult> sorted(List<SearchResult> results) {
+        results.sort(Comparator.comparingDouble((SearchResult result) -> -result.score)
+            .thenComparing(result -> result.name));
+        return results;
+    }
+
+    // score of a transformation, and the line of its best matching occurrence
+    private static final class Hit {
+        double score;
+        double best = -1;
+        int line;
+
+        void add(double weight, int occurrence) {
+            score += weight;
+            if (weight > best) {
+                best = weight;
+                line = occurrence;
+            }
+        }
+
+        void add(Hit other) {
+            score += other.score;
+            if (other.best > best) {
+                best = other.best;
+                line = other.line;
+            }
+        }
+    }
+
+    // a line of a source, empty if the file cannot be read any more
+    private static String readLine(Document document, int line) {
+        if (line >= document.lineStarts.length) return "";
+        try (FileChannel channel = FileChannel.open(document.file)) {
+            long start = document.lineStarts[line];
+            long end = line + 1 < document.lineStarts.length ? document.lineStarts[line + 1] : channel.size();
+            ByteBuffer buffer = ByteBuffer.allocate((int) Math.max(0, Math.min(end - start, MAX_LINE_BYTES)));
+            while (buffer.hasRemaining() && channel.read(buffer, start + buffer.position()) > 0) {
+                // until the end of the line
+            }
+            return new String(buffer.array(), 0, buffer.position(), StandardCharsets.UTF_8).trim();
+        } catch (IOException e) {
+            return "";
+        }
+    }
+
+    // the identifiers of the line matching a query term, between ** like the previous search
+    private static String highlight(String line, List<String> queryTerms) {
+        StringBuilder highlighted = new StringBuilder();
+        Matcher identifiers = IDENTIFIER.matcher(line);
+        int last = 0;
+        while (identifiers.find()) {
+            if (!matches(identifiers.group(), queryTerms)) continue;
+            highlighted.append(line, last, identifiers.start())
+                .append("**").append(identifiers.group()).append("**");
+            last = identifiers.end();
+        }
+        return highlighted.append(line, last, line.length()).toString();
+    }
+
+    private static boolean matches(String identifier, List<String> queryTerms) {
+        for (String term : terms(identifier)) {
+            for (String queryTerm : queryTerms) {
+                if (factor(term, queryTerm) > 0) return true;
+            }
+        }
+        return false;
+    }
+
+    private static Set<String> terms(String identifier) {
+        Set<String> terms = new LinkedHashSet<>();
+        terms.add(identifier.toLowerCase(Locale.ROOT));
+        for (String part : PARTS.split(identifier)) {
+            if (part.length() > 1) {
+                terms.add(part.toLowerCase(Locale.ROOT));
+            }
+        }
+        return terms;
+    }
+
+    // line from 0 of an offset, given the offsets at which lines start
+    private static int line(int[] lineStarts, int offset) {
+        int line = Arrays.binarySearch(lineStarts, offset);
+        return line < 0 ? -line - 2 : line;
+    }
+
+    // char offsets of the lines of a string
+    private static int[] lineStarts(String content) {
+        List<Integer> starts = new ArrayList<>(List.of(0));
+        for (int i = content.indexOf('\n'); i != -1; i = content.indexOf('\n', i + 1)) {
+            starts.add(i + 1);
+        }
+        return starts.stream().mapToInt(Integer::intValue).toArray();
+    }
+
+    // byte offsets of the lines of a file, a '\n' is a single byte in UTF-8
+    private static int[] lineStarts(byte[] content) {
+        List<Integer> starts = new ArrayList<>(List.of(0));
+        for (int i = 0; i < content.length; i++) {
+            if (content[i] == '\n') {
+                starts.add(i + 1);
+            }
+        }
+        return starts.stream().mapToInt(Integer::intValue).toArray();
+    }
+}
@@ -0,0 +1,78 @@
+package fr.imta.naomod.atl;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import io.vertx.core.Handler;
+import io.vertx.core.buffer.Buffer;
+import io.vertx.core.http.HttpHeaders;
+import io.vertx.core.http.HttpMethod;
+import io.vertx.core.http.HttpServerRequest;
+import io.vertx.ext.web.RoutingContext;
+import io.vertx.ext.web.handler.BodyHandler;
+
+/**
+ * Keeps the models uploaded to the transformation routes in memory, so that
+ * they are parsed straight from the request buffers instead of being written
+ * to disk by the BodyHandler and read again.
+ *
+ * Enabled with ATL_STREAM_UPLOADS. Only multipart requests whose declared
+ * length is at most ATL_UPLOAD_MEMORY_BYTES (16 MB by default) are kept in
+ * memory; larger ones, and those of unknown length, are spilled to disk by
+ * the BodyHandler as before. The uploads are available from
+ * {@link ModelUpload#of(RoutingContext)} in both cases.
+ */
+public class StreamingUploadHandler implements Handler<RoutingContext> {
+    private final BodyHandler bodyHandler;
+    private final boolean enabled;
+    private final long memoryLimit;
+
+    public StreamingUploadHandler(BodyHandler bodyHandler) {
+        this.bodyHandler = bodyHandler;
+        this.enabled = Config.getBoolean("ATL_STREAM_UPLOADS", false);
+        this.memoryLimit = Config.getLong("ATL_UPLOAD_MEMORY_BYTES", 16L * 1024 * 1024);
+    }
+
+    @Override
+    public void handle(RoutingContext ctx) {
+        if (!enabled || !accepts(ctx.request())) {
+            bodyHandler.handle(ctx);
+            return;
+        }
+
+        HttpServerRequest request = ctx.request();
+        List<ModelUpload> uploads = new ArrayList<>();
+        request.setExpectMultipart(true);
+        request.uploadHandler(upload -> {
+            Buffer content = Buffer.buffer();
+            upload.handler(content::appendBuffer);
+            upload.endHandler(v -> uploads.add(ModelUpload.inMemory(upload.name(), upload.filename(), upload.contentType(), content)));
+        });
+        request.exceptionHandler(ctx::fail);
+        request.endHandler(v -> {
+            ctx.put(ModelUpload.CONTEXT_KEY, uploads);
+            ctx.next();
+        });
+        // the router pauses requests until a body handler consumes them
+        request.resume();
+    }
+
+    private boolean accepts(HttpServerRequest request) {
+        if (request.method() != HttpMethod.POST) return false;
+        String path = request.path();
+        if (!path.endsWith("/apply") && !path.endsWith("/apply/batch")
+                && !path.endsWith("/chain") && !path.endsWith("/chain/batch")) {
+            return false;
+        }
+        String contentType = request.getHeader(HttpHeaders.CONTENT_TYPE);
+        if (contentType == null || !contentType.toLowerCase().startsWith("multipart/form-data")) {
+            return false;
+        }
+        try {
+            String length = request.getHeader(HttpHeaders.CONTENT_LENGTH);
+            return length != null && Long.parseLong(length) <= memoryLimit;
+        } catch (NumberFormatException e) {
+            return false;
+        }
+    }
+}
@@ -9,6 +9,9 @@ import java.util.List;
 
 @JsonIgnoreProperties(ignoreUnknown = true)
 public class Transformation {
+    // assigned by the TransformationRegistry, stable for a given name
+    public Integer id;
+
     public String name;
 
     public String atlFile;
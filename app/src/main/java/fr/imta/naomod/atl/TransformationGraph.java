@@ -0,0 +1,198 @@
+package fr.imta.naomod.atl;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.Collections;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.PriorityQueue;
+import java.util.function.ToDoubleFunction;
+
+/**
+ * Metamodels linked by the transformations from one to the other, part of a
+ * {@link TransformationRegistry} snapshot. Only the transformations that can
+ * be chained are edges: the enabled ones with a single input metamodel, from
+ * it to their first output metamodel.
+ *
+ * A metamodel is identified by its name (file name without extension), in
+ * lower case. The metamodels reachable from each one are kept along with the
+ * edges, updated as edges are added and recomputed when some are removed, so
+ * that a search between unrelated metamodels ends at once and a search only
+ * goes through metamodels leading to the target.
+ *
+ * Like {@link MetamodelIndex}, a graph is only changed while it is not
+ * published yet.
+ */
+public class TransformationGraph {
+
+    /**
+     * Transformations to apply in order, and the metamodels they go through
+     * from the source to the target.
+     */
+    public record Chain(List<String> transformations, List<String> metamodels) {}
+
+    private record Edge(int to, String transformation) {}
+
+    private record Visit(int node, double distance) {}
+
+    private final Map<String, Integer> ids;
+    // by id
+    private final List<String> names;
+    private final List<List<Edge>> edges;
+    private final List<BitSet> reachable;
+    // reachability must be recomputed, after edges were removed
+    private boolean stale;
+
+    TransformationGraph() {
+        this(new HashMap<>(), new ArrayList<>(), new ArrayList<>(), new ArrayList<>());
+    }
+
+    private TransformationGraph(Map<String, Integer> ids, List<String> names, List<List<Edge>> edges,
+            List<BitSet> reachable) {
+        this.ids = ids;
+        this.names = names;
+        this.edges = edges;
+        this.reachable = reachable;
+    }
+
+    TransformationGraph copy() {
+        List<List<Edge>> edgesCopy = new ArrayList<>();
+        for (List<Edge> out : edges) {
+            edgesCopy.add(new ArrayList<>(out));
+        }
+        List<BitSet> reachableCopy = new ArrayList<>();
+        for (BitSet nodes : reachable) {
+            reachableCopy.add((BitSet) nodes.clone());
+        }
+        TransformationGraph copy = new TransformationGraph(new HashMap<>(ids), new ArrayList<>(names), edgesCopy,
+                reachableCopy);
+        copy.stale = stale;
+        return copy;
+    }
+
+    void add(Transformation transformation) {
+        if (!isChainable(transformation)) return;
+        int from = node(transformation.inputMetamodels.get(0).path);
+        int to = node(transformation.outputMetamodels.get(0).path);
+        edges.get(from).add(new Edge(to, transformation.name));
+        if (stale) return;
+
+        // whatever reaches the source now also reaches the target, and what the target reaches
+        BitSet gained = (BitSet) reachable.get(to).clone();
+        gained.set(to);
+        for (int node = 0; node < names.size(); node++) {
+            if (node == from || reachable.get(node).get(from)) {
+                reachable.get(node).or(gained);
+            }
+        }
+    }
+
+    void remove(Transformation transformation) {
+        for (List<Edge> out : edges) {
+            if (out.removeIf(edge -> edge.transformation.equals(transformation.name))) {
+                stale = true;
+            }
+        }
+    }
+
+    /**
+     * Recomputes the reachable metamodels if edges were removed, before the
+     * graph is published.
+     */
+    void seal() {
+        if (!stale) return;
+        for (int node = 0; node < names.size(); node++) {
+            BitSet nodes = new BitSet();
+            Deque<Integer> pending = new ArrayDeque<>(List.of(node));
+            while (!pending.isEmpty()) {
+                for (Edge edge : edges.get(pending.poll())) {
+                    if (!nodes.get(edge.to)) {
+                        nodes.set(edge.to);
+                        pending.add(edge.to);
+                    }
+                }
+            }
+            reachable.set(node, nodes);
+        }
+        stale = false;
+    }
+
+    /**
+     * The cheapest chain from a metamodel to another, given the cost of each
+     * transformation, or null if there is none. Metamodels are given by name
+     * or file name.
+     */
+    Chain find(String source, String target, ToDoubleFunction<String> cost) {
+        Integer from = ids.get(key(source));
+        Integer to = ids.get(key(target));
+        if (from == null || to == null) return null;
+        if (from.equals(to)) return new Chain(List.of(), List.of(names.get(from)));
+        if (!reachable.get(from).get(to)) return null;
+
+        double[] distances = new double[names.size()];
+        Arrays.fill(distances, Double.POSITIVE_INFINITY);
+        Edge[] via = new Edge[names.size()];
+        int[] previous = new int[names.size()];
+        distances[from] = 0;
+        PriorityQueue<Visit> queue = new PriorityQueue<>((a, b) -> Double.compare(a.distance, b.distance));
+        queue.add(new Visit(from, 0));
+        while (!queue.isEmpty()) {
+            Visit visit = queue.poll();
+            if (visit.node == to) break;
+            if (visit.distance > distances[visit.node]) continue;
+            for (Edge edge : edges.get(visit.node)) {
+                // a metamodel that does not lead to the target is not worth visiting
+                if (edge.to != to && !reachable.get(edge.to).get(to)) continue;
+                double distance = visit.distance + cost.applyAsDouble(edge.transformation);
+                if (distance < distances[edge.to]) {
+                    distances[edge.to] = distance;
+                    via[edge.to] = edge;
+                    previous[edge.to] = visit.node;
+                    queue.add(new Visit(edge.to, distance));
+                }
+            }
+        }
+
+        List<String> transformations = new ArrayList<>();
+        List<String> metamodels = new ArrayList<>();
+        for (int node = to; node != from; node = previous[node]) {
+            transformations.add(via[node].transformation);
+            metamodels.add(names.get(node));
+        }
+        metamodels.add(names.get(from));
+        Collections.reverse(transformations);
+        Collections.reverse(metamodels);
+        return new Chain(transformations, metamodels);
+    }
+
+    private int node(String path) {
+        return ids.computeIfAbsent(key(path), key -> {
+            names.add(name(path));
+            edges.add(new ArrayList<>());
+            reachable.add(new BitSet());
+            return names.size() - 1;
+        });
+    }
+
+    private static boolean isChainable(Transformation transformation) {
+        return transformation.enabled != null && transformation.enabled
+            && transformation.inputMetamodels.size() == 1 && !transformation.outputMetamodels.isEmpty()
+            && transformation.inputMetamodels.get(0).path != null
+            && transformation.outputMetamodels.get(0).path != null;
+    }
+
+    // file name without the .ecore extension
+    private static String name(String path) {
+        String name = path.substring(Math.max(path.lastIndexOf('/'), path.lastIndexOf('\\')) + 1);
+        return name.toLowerCase(Locale.ROOT).endsWith(".ecore") ? name.substring(0, name.length() - 6) : name;
+    }
+
+    private static String key(String path) {
+        return name(path).toLowerCase(Locale.ROOT);
+    }
+}
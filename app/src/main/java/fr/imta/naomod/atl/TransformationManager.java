@@ -6,11 +6,21 @@ import java.util.ArrayList;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.Set;
 
 import fr.imta.naomod.atl.runners.ATLRunner;
 import fr.imta.naomod.atl.runners.EMFTVMRunner;
 import fr.imta.naomod.atl.runners.EMFVMRunner;
-import io.vertx.core.json.Json;
+import fr.imta.naomod.atl.runners.MetamodelRegistry;
+import fr.imta.naomod.atl.runners.ModelFormat;
+import fr.imta.naomod.atl.runners.ModelInput;
+import fr.imta.naomod.atl.runners.OutputBuffer;
+import fr.imta.naomod.atl.runners.OutputSink;
+import fr.imta.naomod.atl.runners.ResultCache;
+import fr.imta.naomod.atl.runners.SnapshotStore;
+import fr.imta.naomod.atl.runners.TransformationResult;
+
+import org.eclipse.emf.ecore.resource.Resource;
 
 import java.nio.file.Files;
 import java.nio.file.Path;
@@ -18,79 +28,130 @@ import java.nio.file.StandardCopyOption;
 import java.nio.file.Paths;
 
 public class TransformationManager {
-    private Map<String, Transformation> transformations;
+    private final TransformationRegistry transformations = new TransformationRegistry();
     private Map<String, ATLRunner> runners = new HashMap<>();
+    private final ResultCache resultCache = ResultCache.fromConfig();
+    private final ExecutionTimes executionTimes = new ExecutionTimes();
+    private final List<File> catalogRoots;
 
     public TransformationManager() {
-        transformations = new HashMap<>();
+        this(defaultCatalogRoots());
+    }
+
+    // Reads the transformations of the given catalog directories only, e.g. in the benchmarks
+    TransformationManager(List<File> catalogRoots) {
+        this.catalogRoots = catalogRoots;
         runners.put("EMFTVM", new EMFTVMRunner());
         runners.put("EMFVM", new EMFVMRunner());
         loadTransformations();
     }
 
     public void loadTransformations() {
-        // List to store directories to process
-        List<File> dirsToProcess = new ArrayList<>();
+        long start = System.currentTimeMillis();
+        List<Transformation> loaded = CatalogLoader.load(catalogRoots);
+        transformations.registerAll(loaded);
+        Log.info("Loaded " + loaded.size() + " transformations in "
+                + (System.currentTimeMillis() - start) + " ms");
+    }
 
-        // Add original transformations directory
-        File originalDir = new File("/Users/zakariahachm/Downloads/atl_zoo");//put your atl zoo project directory
+    // Directories with a folder per transformation: the ATL zoo (ATL_ZOO_DIR) and the user transformations
+    private static List<File> defaultCatalogRoots() {
+        List<File> roots = new ArrayList<>();
+        File originalDir = new File(Config.getString("ATL_ZOO_DIR", "/Users/zakariahachm/Downloads/atl_zoo"));
         if (originalDir.exists()) {
-            dirsToProcess.add(originalDir);
+            roots.add(originalDir);
         }
-
-        // Add user transformations directory
         File userDir = new File("src/main/resources/userTransformations");
         if (userDir.exists()) {
-            dirsToProcess.add(userDir);
-        }
-
-        // Process each directory
-        for (File dir : dirsToProcess) {
-            File[] transformationDirs = dir.listFiles(File::isDirectory);
-
-            if (transformationDirs != null) {
-                for (File transformationDir : transformationDirs) {
-                    System.out.println("Processing folder: " + transformationDir.getName());
-                    File config = findFileWithExtension(transformationDir, "json");
-
-                    if (config == null) continue;
-
-                    String content;
-                    try {
-                        content = Files.readString(config.toPath());
-                        Transformation[] transformationsJson = Json.decodeValue(content, Transformation[].class);
-                        for (var t : transformationsJson) {
-                            System.out.println("Transformation: " + t.name);
-                            t.folderPath = transformationDir.getAbsolutePath();
-                            transformations.put(t.name, t);
-                        }
-                    } catch (IOException e) {
-                        // TODO Auto-generated catch block
-                        e.printStackTrace();
-                    }
-                }
-            }
+            roots.add(userDir);
         }
+        return roots;
+    }
+
+    // Reload the folders of the catalog directories when they change on disk
+    public void watchTransformations() throws IOException {
+        new CatalogWatcher(catalogRoots, this::reloadFolder).start();
     }
 
-    private File findFileWithExtension(File dir, String extension) {
-        File[] files = dir.listFiles((d, name) -> name.endsWith(extension));
-        return (files != null && files.length > 0) ? files[0] : null;
+    // Read a transformation folder again, its previous transformations are replaced at once
+    void reloadFolder(File folder) {
+        String folderPath = folder.getAbsolutePath();
+        List<Transformation> loaded = folder.isDirectory() ? CatalogLoader.loadFolder(folder) : List.of();
+        List<String> previous = new ArrayList<>();
+        for (Transformation transformation : getAllTransformations()) {
+            if (folderPath.equals(transformation.folderPath)) {
+                previous.add(transformation.name);
+            }
+        }
+        if (previous.isEmpty() && loaded.isEmpty()) return;
+
+        transformations.replace(previous, loaded);
+        // results and execution times of a previous version must not be used
+        for (String name : previous) {
+            resultCache.invalidate(name);
+            executionTimes.forget(name);
+        }
+        for (Transformation transformation : loaded) {
+            resultCache.invalidate(transformation.name);
+            executionTimes.forget(transformation.name);
+        }
+        Log.info("Reloaded " + folder.getName() + ": " + loaded.size() + " transformations");
     }
 
+    // Snapshot of the transformations, it does not change when some are added
     public List<Transformation> getAllTransformations() {
-        return new ArrayList<>(transformations.values());
+        return transformations.getAll();
     }
 
     public Transformation getTransformationById(int id) {
-        return transformations.get(id);
+        return transformations.getById(id);
     }
 
     public Transformation getTransformationByName(String name) {
-        return transformations.values().stream()
-                .filter(t -> t.name.equalsIgnoreCase(name))
-                .findFirst()
-                .orElse(null);
+        return transformations.getByName(name);
+    }
+
+    // Names of the transformations from a metamodel to another, matched by path, file name, name or nsURI
+    public List<String> findTransformationsByMetamodels(String inputMetamodel, String outputMetamodel) {
+        Set<String> outputs = transformations.findByOutputMetamodel(outputMetamodel);
+        List<String> names = new ArrayList<>();
+        for (String name : transformations.findByInputMetamodel(inputMetamodel)) {
+            if (outputs.contains(name)) {
+                names.add(name);
+            }
+        }
+        return names;
+    }
+
+    // Names of the transformations by input metamodel name, for metamodels read by more than minCount of them
+    public Map<String, List<String>> getTransformationsByInputMetamodel(int minCount) {
+        return transformations.groupByInputMetamodel(minCount);
+    }
+
+    // Transformations whose ATL source matches every term of the query (or a prefix of it), best first
+    public List<SearchResult> searchTransformations(String query) {
+        return transformations.search(query);
+    }
+
+    /**
+     * The chain of transformations from a metamodel to another with the
+     * fewest steps or, when weighted, the one expected to run the fastest
+     * from the average execution time of each transformation. Returns null
+     * if there is none.
+     */
+    public TransformationGraph.Chain findChain(String sourceMetamodel, String targetMetamodel, boolean weighted) {
+        return transformations.findChain(sourceMetamodel, targetMetamodel,
+                weighted ? executionTimes.estimates() : transformation -> 1);
+    }
+
+    // Expected execution time of a chain of transformations, in ms
+    public double estimateDuration(List<String> transformationNames) {
+        var estimates = executionTimes.estimates();
+        double total = 0;
+        for (String name : transformationNames) {
+            total += estimates.applyAsDouble(name);
+        }
+        return total;
     }
 
     public Transformation addTransformation(String name, String atlFilePath,
@@ -155,14 +216,96 @@ public class TransformationManager {
             transformation.outputMetamodels.add(m);
         }
 
-        // Save the transformation in the map
-        transformations.put(name, transformation);
+        // Save the transformation in the map, results of a previous version must not be served
+        resultCache.invalidate(name);
+        executionTimes.forget(name);
+        transformations.register(transformation);
 
         return transformation;
     }
 
-    public String applyTransformation(Transformation transformation, Map<String, String> inputFiles) throws Exception {
-        return runners.get(transformation.compiler).applyTransformation(inputFiles, transformation);
+    // Compile the modules and parse the metamodels of a transformation, ahead of its first request
+    public void prepare(Transformation transformation) throws Exception {
+        ATLRunner runner = runners.get(transformation.compiler);
+        if (runner == null) {
+            throw new IllegalArgumentException("Unknown compiler " + transformation.compiler);
+        }
+        runner.warmup(transformation);
+    }
+
+    // Hit/miss counters of the metamodel registry and of the compiled module caches
+    public Map<String, Object> getCacheStats() {
+        Map<String, Object> stats = new HashMap<>();
+        stats.put("metamodels", MetamodelRegistry.getInstance().getStats());
+        stats.put("results", resultCache.getStats());
+        stats.put("snapshot", SnapshotStore.getInstance().getStats());
+        for (var runner : runners.entrySet()) {
+            stats.put(runner.getKey(), runner.getValue().getStats());
+        }
+        return stats;
+    }
+
+    // Apply a transformation, streaming its outputs to the sink
+    public void applyTransformation(Transformation transformation, Map<String, ModelInput> inputs, OutputSink sink,
+            ModelFormat format) throws Exception {
+        long start = System.nanoTime();
+        // models of this request must not outlive it
+        try (TransformationResult result = runners.get(transformation.compiler).run(inputs, transformation)) {
+            result.save(sink, format);
+            executionTimes.record(transformation.name, result.getRunNanos());
+        }
+        Metrics.getInstance().recordExecution(transformation, System.nanoTime() - start);
+    }
+
+    /**
+     * Applies a transformation, streaming its outputs to the sink. When a
+     * result cache key is given, the outputs are served from the cache if
+     * they are there, and stored in it otherwise.
+     */
+    public void applyTransformation(Transformation transformation, Map<String, ModelInput> inputs, OutputSink sink,
+            ModelFormat format, String cacheKey) throws Exception {
+        if (cacheKey == null) {
+            applyTransformation(transformation, inputs, sink, format);
+            return;
+        }
+        if (resultCache.load(cacheKey, transformation.name, sink)) {
+            return;
+        }
+        try (ResultCache.Recorder recorder = resultCache.record(cacheKey, transformation.name, sink)) {
+            applyTransformation(transformation, inputs, recorder, format);
+            recorder.store();
+        }
+    }
+
+    /**
+     * Result cache key of an execution, or null if its result cannot be
+     * cached (cache disabled, or sources that cannot be read).
+     */
+    public boolean isResultCacheEnabled() {
+        return resultCache.isEnabled();
+    }
+
+    public String getResultCacheKey(Transformation transformation, Map<String, String> inputHashes, ModelFormat format) {
+        if (!resultCache.isEnabled()) return null;
+        try {
+            return resultCache.key(transformation, inputHashes, format);
+        } catch (IOException e) {
+            return null;
+        }
+    }
+
+    // Apply a transformation, the caller must close the result once its outputs are used
+    public TransformationResult runTransformation(Transformation transformation, Map<String, ModelInput> inputs) throws Exception {
+        long start = System.nanoTime();
+        TransformationResult result = runners.get(transformation.compiler).run(inputs, transformation);
+        executionTimes.record(transformation.name, result.getRunNanos());
+        Metrics.getInstance().recordExecution(transformation, System.nanoTime() - start);
+        return result;
+    }
+
+    // Apply a transformation to a sample during the warmup, which the execution times must not count
+    TransformationResult runSample(Transformation transformation, Map<String, ModelInput> inputs) throws Exception {
+        return runners.get(transformation.compiler).run(inputs, transformation);
     }
 
     public void deleteTransformation(String name) {
@@ -177,12 +320,10 @@ public class TransformationManager {
 
     public void deleteTransformationByName(String idOrName) {
         Transformation transformation = getTransformationByName(idOrName);
-        System.out.println("Transformation to delete: " + idOrName);
-        System.out.println(" the whole Transformation to delete: " + transformation);
-        System.out.println(getAllTransformations());
+        Log.info("Transformation to delete: " + idOrName);
         if (transformation != null) {
             deleteTransformation(transformation.name);
-            System.out.println("Transformation deleted: " + idOrName);
+            Log.info("Transformation deleted: " + idOrName);
         }
     }
 
@@ -197,46 +338,111 @@ public class TransformationManager {
         dir.delete();
     }
 
-    public String applyTransformationChain(List<String> transformationNames, String initialInputFile)
+    /**
+     * Applies a chain of transformations. The output model of each step is
+     * handed to the next one in memory when it conforms to the very metamodel
+     * the next step expects, and serialized in memory otherwise.
+     */
+    public ChainResult applyTransformationChain(List<String> transformationNames, ModelInput initialInput)
             throws Exception {
+        List<Transformation> chain = resolveChain(transformationNames);
+
+        TransformationResult previous = null;
+        List<Long> durations = new ArrayList<>();
+
+        try {
+            // Apply each transformation in sequence
+            for (int i = 0; i < chain.size(); i++) {
+                long start = System.nanoTime();
+                TransformationResult stepInput = previous;
+                // the step releases the previous outputs, even if it fails
+                previous = null;
+                previous = applyChainStep(chain, i, stepInput, initialInput);
+                durations.add(System.nanoTime() - start);
+            }
+
+            ChainResult chainResult = new ChainResult(previous);
+            for (int i = 0; i < chain.size(); i++) {
+                chainResult.addStep(chain.get(i).name, durations.get(i));
+            }
+            return chainResult;
+        } catch (Exception | Error e) {
+            if (previous != null) {
+                previous.close();
+            }
+            throw e;
+        }
+    }
+
+    /**
+     * Resolves the transformations of a chain by name, failing if any of them
+     * is unknown.
+     */
+    public List<Transformation> resolveChain(List<String> transformationNames) {
         if (transformationNames == null || transformationNames.isEmpty()) {
             throw new IllegalArgumentException("Transformation chain cannot be empty");
         }
+        List<Transformation> chain = new ArrayList<>();
+        for (String name : transformationNames) {
+            Transformation transformation = getTransformationByName(name);
+            if (transformation == null) {
+                throw new IllegalArgumentException("Transformation not found: " + name);
+            }
+            chain.add(transformation);
+        }
+        return chain;
+    }
 
-        String currentInputFile = initialInputFile;
-        String finalOutput = null;
-        Path tempDir = Files.createTempDirectory("chain_transformation_");
+    /**
+     * Runs the step {@code index} of a resolved chain, on the outputs of the
+     * previous step, or on {@code initialInput} for the first one.
+     *
+     * The previous outputs are handed over in memory when they conform to the
+     * very metamodel this step expects, and serialized in memory (in the
+     * binary format) otherwise.
+     * They are always closed once this step returns, successfully or not.
+     */
+    TransformationResult applyChainStep(List<Transformation> chain, int index, TransformationResult previous,
+            ModelInput initialInput) throws Exception {
+        Transformation currentTransformation = chain.get(index);
+        //fixme: we assume that intermediate transformations only have 1 input & ouput
+        NamedFile inputMetamodel = currentTransformation.inputMetamodels.get(0);
+        ModelInput currentInput = initialInput;
+        OutputBuffer serialized = null;
 
         try {
-            // Apply each transformation in sequence
-            for (int i = 0; i < transformationNames.size(); i++) {
-                // Get current transformation
-                Transformation currentTransformation = getTransformationByName(transformationNames.get(i));
-                if (currentTransformation == null) {
-                    throw new IllegalArgumentException("Transformation not found: " + transformationNames.get(i));
+            if (previous != null) {
+                Transformation previousTransformation = chain.get(index - 1);
+                NamedFile outputMetamodel = previousTransformation.outputMetamodels.get(0);
+                Resource output = previous.getOutputs().get(outputMetamodel.name);
+                if (output == null) {
+                    throw new IllegalStateException(previousTransformation.name + " did not produce any output");
                 }
 
-                // Apply transformation
-                Map<String, String> input = new HashMap<>();
-                input.put("IN", currentInputFile); //fixme: we assume that intermediate transformations only have 1 input & ouput
-                String output = runners.get(currentTransformation.compiler).applyTransformation(input, currentTransformation);
-
-                if (i < transformationNames.size() - 1) {
-                    // Save intermediate result to temp file
-                    Path tempOutput = tempDir.resolve("intermediate_" + i + ".xmi");
-                    Files.write(tempOutput, output.getBytes());
-                    currentInputFile = tempOutput.toString();
+                MetamodelRegistry metamodels = MetamodelRegistry.getInstance();
+                if (metamodels.get(previousTransformation.folderPath + "/" + outputMetamodel.path)
+                        == metamodels.get(currentTransformation.folderPath + "/" + inputMetamodel.path)) {
+                    currentInput = ModelInput.resource(output);
                 } else {
-                    // Keep final output
-                    finalOutput = output;
+                    // distinct metamodel instances (e.g. two copies of the same .ecore), load it again against
+                    // the expected one. The binary format is much cheaper to write and parse than XMI.
+                    serialized = new OutputBuffer();
+                    try (OutputBuffer buffer = serialized) {
+                        ModelFormat.BINARY.save(output, buffer);
+                    }
+                    currentInput = ModelInput.buffer(serialized, ModelFormat.BINARY);
                 }
             }
 
-            return finalOutput;
-
+            return runTransformation(currentTransformation, Map.of(inputMetamodel.name, currentInput));
         } finally {
-            // Clean up temp files
-            deleteDirectoryRecursively(tempDir.toFile());
+            // the previous step outputs were consumed, release them
+            if (previous != null) {
+                previous.close();
+            }
+            if (serialized != null) {
+                serialized.discard();
+            }
         }
     }
 
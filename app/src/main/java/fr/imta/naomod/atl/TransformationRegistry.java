@@ -0,0 +1,185 @@
+package fr.imta.naomod.atl;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+import java.util.function.ToDoubleFunction;
+
+/**
+ * Known transformations, indexed by id, by case-insensitive name and by the
+ * metamodels they read and write and by the content of their ATL source,
+ * along with the graph of the chains they form. Names differing only by case
+ * designate the same transformation.
+ *
+ * Readers work on an immutable snapshot and never block. Writers copy the
+ * current snapshot, change the copy and publish it, one at a time.
+ *
+ * Each name gets a numeric id the first time it is registered, and keeps it
+ * when the transformation is replaced or removed and added again.
+ */
+public class TransformationRegistry {
+
+    private static final class Snapshot {
+        // by lower case name, in registration order
+        final Map<String, Transformation> byName;
+        final Map<Integer, Transformation> byId = new HashMap<>();
+        final List<Transformation> all;
+        final MetamodelIndex metamodels;
+        final TransformationGraph graph;
+        final SourceIndex sources;
+
+        Snapshot(Map<String, Transformation> byName, MetamodelIndex metamodels, TransformationGraph graph,
+                SourceIndex sources) {
+            this.byName = byName;
+            this.metamodels = metamodels;
+            this.graph = graph;
+            this.sources = sources;
+            for (Transformation transformation : byName.values()) {
+                byId.put(transformation.id, transformation);
+            }
+            this.all = Collections.unmodifiableList(new ArrayList<>(byName.values()));
+        }
+    }
+
+    private volatile Snapshot snapshot = new Snapshot(new LinkedHashMap<>(), new MetamodelIndex(),
+            new TransformationGraph(), new SourceIndex());
+    // guarded by this
+    private final Map<String, Integer> ids = new HashMap<>();
+    private int nextId = 1;
+
+    public List<Transformation> getAll() {
+        return snapshot.all;
+    }
+
+    public int size() {
+        return snapshot.all.size();
+    }
+
+    public Transformation getById(int id) {
+        return snapshot.byId.get(id);
+    }
+
+    public Transformation getByName(String name) {
+        return name == null ? null : snapshot.byName.get(lowerCase(name));
+    }
+
+    /**
+     * Names of the transformations reading a metamodel matching the query (a
+     * path, file name, name or nsURI, or part of one).
+     */
+    public Set<String> findByInputMetamodel(String query) {
+        return snapshot.metamodels.findByInput(query);
+    }
+
+    /**
+     * Names of the transformations writing a metamodel matching the query.
+     */
+    public Set<String> findByOutputMetamodel(String query) {
+        return snapshot.metamodels.findByOutput(query);
+    }
+
+    /**
+     * Names of the transformations by the name of the metamodels they read,
+     * for the metamodels read by more than {@code minCount} of them.
+     */
+    public Map<String, List<String>> groupByInputMetamodel(int minCount) {
+        return snapshot.metamodels.groupByInput(minCount);
+    }
+
+    /**
+     * The cheapest chain of transformations from a metamodel to another,
+     * given the cost of each transformation, or null if there is none.
+     */
+    public TransformationGraph.Chain findChain(String source, String target, ToDoubleFunction<String> cost) {
+        return snapshot.graph.find(source, target, cost);
+    }
+
+    /**
+     * The transformations whose ATL source matches every term of the query,
+     * best matches first.
+     */
+    public List<SearchResult> search(String query) {
+        return snapshot.sources.search(query);
+    }
+
+    /**
+     * Adds a transformation, or replaces the one with the same name.
+     */
+    public void register(Transformation transformation) {
+        registerAll(List.of(transformation));
+    }
+
+    /**
+     * Adds or replaces several transformations, published at once.
+     */
+    public void registerAll(Collection<Transformation> transformations) {
+        replace(List.of(), transformations);
+    }
+
+    /**
+     * Removes the transformation with the given name, returning it.
+     */
+    public Transformation remove(String name) {
+        return replace(List.of(name), List.of()).stream().findFirst().orElse(null);
+    }
+
+    /**
+     * Removes transformations by name and adds or replaces others, published
+     * at once. Returns the transformations removed.
+     */
+    public List<Transformation> replace(Collection<String> removedNames, Collection<Transformation> added) {
+        // files are read and tokenized in parallel, before taking the lock
+        List<Indexed> indexed = added.parallelStream()
+            .map(transformation -> new Indexed(transformation,
+                MetamodelIndex.keys(transformation), SourceIndex.read(transformation)))
+            .toList();
+        return publish(removedNames, indexed);
+    }
+
+    private record Indexed(Transformation transformation, MetamodelIndex.Keys metamodels, SourceIndex.Document source) {}
+
+    private synchronized List<Transformation> publish(Collection<String> removedNames, List<Indexed> added) {
+        Map<String, Transformation> byName = new LinkedHashMap<>(snapshot.byName);
+        MetamodelIndex metamodels = snapshot.metamodels.copy();
+        TransformationGraph graph = snapshot.graph.copy();
+        SourceIndex sources = snapshot.sources.copy();
+
+        List<Transformation> removed = new ArrayList<>();
+        for (String name : removedNames) {
+            Transformation previous = byName.remove(lowerCase(name));
+            if (previous != null) {
+                removed.add(previous);
+                metamodels.remove(previous);
+                graph.remove(previous);
+                sources.remove(previous);
+            }
+        }
+        for (Indexed entry : added) {
+            Transformation transformation = entry.transformation;
+            String key = lowerCase(transformation.name);
+            transformation.id = ids.computeIfAbsent(key, k -> nextId++);
+            Transformation previous = byName.put(key, transformation);
+            if (previous != null) {
+                metamodels.remove(previous);
+                graph.remove(previous);
+                sources.remove(previous);
+            }
+            metamodels.add(transformation, entry.metamodels);
+            graph.add(transformation);
+            sources.add(transformation, entry.source);
+        }
+        graph.seal();
+        snapshot = new Snapshot(byName, metamodels, graph, sources);
+        return removed;
+    }
+
+    private static String lowerCase(String name) {
+        return name.toLowerCase(Locale.ROOT);
+    }
+}
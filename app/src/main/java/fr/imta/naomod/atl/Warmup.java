@@ -0,0 +1,169 @@
+package fr.imta.naomod.atl;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import fr.imta.naomod.atl.runners.ModelFormat;
+import fr.imta.naomod.atl.runners.ModelInput;
+import fr.imta.naomod.atl.runners.SnapshotStore;
+import fr.imta.naomod.atl.runners.TransformationResult;
+
+/**
+ * Prepares the enabled transformations ahead of their first request: their
+ * modules are compiled and their metamodels parsed by preparing an execution
+ * environment, then each one is applied ATL_WARMUP_RUNS times (3 by default)
+ * to its sample models so that the JIT compiles the code they go through.
+ *
+ * Transformations are warmed up in parallel, on ATL_WARMUP_THREADS threads
+ * (the number of cores by default). The server is ready once the first
+ * warmup is over, a transformation that failed does not prevent it: it is
+ * prepared again by its first request.
+ */
+class Warmup implements Runnable {
+    private final TransformationManager transformationManager;
+    private final int threads = Config.getInt("ATL_WARMUP_THREADS", Runtime.getRuntime().availableProcessors());
+    private final int runs = Config.getInt("ATL_WARMUP_RUNS", 3);
+
+    private volatile boolean ready;
+    private volatile boolean running;
+    private volatile long startedAt;
+    private volatile long durationMs;
+    private final AtomicInteger total = new AtomicInteger();
+    private final AtomicInteger prepared = new AtomicInteger();
+    private final AtomicInteger sampleRuns = new AtomicInteger();
+    private final AtomicInteger failed = new AtomicInteger();
+
+    Warmup(TransformationManager transformationManager) {
+        this.transformationManager = transformationManager;
+    }
+
+    /**
+     * Starts a warmup in the background, unless one is running already.
+     */
+    synchronized boolean start() {
+        if (running) return false;
+        running = true;
+        Thread thread = new Thread(this, "atl-warmup");
+        thread.setDaemon(true);
+        thread.start();
+        return true;
+    }
+
+    /**
+     * Declares the server ready without any warmup, when it is disabled.
+     */
+    void skip() {
+        ready = true;
+    }
+
+    boolean isReady() {
+        return ready;
+    }
+
+    Map<String, Object> getStatus() {
+        Map<String, Object> status = new LinkedHashMap<>();
+        status.put("status", ready ? "ready" : "warming up");
+        status.put("running", running);
+        status.put("transformations", total.get());
+        status.put("prepared", prepared.get());
+        status.put("sampleRuns", sampleRuns.get());
+        status.put("failed", failed.get());
+        status.put("durationMs", running ? System.currentTimeMillis() - startedAt : durationMs);
+        return status;
+    }
+
+    @Override
+    public void run() {
+        startedAt = System.currentTimeMillis();
+        List<Transformation> enabled = transformationManager.getAllTransformations().stream()
+            .filter(t -> t.enabled != null && t.enabled)
+            .toList();
+        total.set(enabled.size());
+        prepared.set(0);
+        sampleRuns.set(0);
+        failed.set(0);
+
+        ExecutorService executor = Executors.newFixedThreadPool(Math.max(1, threads), task -> {
+            Thread thread = new Thread(task, "atl-warmup-worker");
+            thread.setDaemon(true);
+            return thread;
+        });
+        try {
+            for (Transformation transformation : enabled) {
+                executor.execute(() -> warmup(transformation));
+            }
+            executor.shutdown();
+            executor.awaitTermination(Long.MAX_VALUE, TimeUnit.MILLISECONDS);
+        } catch (InterruptedException e) {
+            executor.shutdownNow();
+            Thread.currentThread().interrupt();
+        } finally {
+            durationMs = System.currentTimeMillis() - startedAt;
+            Log.info("Warmed up " + prepared.get() + " of " + enabled.size() + " transformations ("
+                + sampleRuns.get() + " sample runs, " + failed.get() + " failures) in " + durationMs + " ms");
+            ready = true;
+            running = false;
+        }
+
+        // what was just compiled and parsed is kept for the next start
+        SnapshotStore.getInstance().save();
+    }
+
+    private void warmup(Transformation transformation) {
+        try {
+            transformationManager.prepare(transformation);
+            prepared.incrementAndGet();
+        } catch (Exception e) {
+            failed.incrementAndGet();
+            Log.error("Cannot warm up " + transformation.name + ": " + e.getMessage());
+            return;
+        }
+
+        for (Map<String, ModelInput> inputs : sampleInputs(transformation)) {
+            for (int run = 0; run < runs; run++) {
+                try (TransformationResult result = transformationManager.runSample(transformation, inputs)) {
+                    sampleRuns.incrementAndGet();
+                } catch (Exception e) {
+                    failed.incrementAndGet();
+                    Log.error("Cannot run " + transformation.name + " on its samples: " + e.getMessage());
+                    break;
+                }
+            }
+        }
+    }
+
+    // the inputs of each sample, by input model name in the order of the input metamodels
+    private static List<Map<String, ModelInput>> sampleInputs(Transformation transformation) {
+        List<Map<String, ModelInput>> samples = new ArrayList<>();
+        if (transformation.sampleModels == null) return samples;
+        for (SampleModel sample : transformation.sampleModels) {
+            if (sample == null || sample.source == null
+                    || sample.source.size() != transformation.inputMetamodels.size()) continue;
+            Map<String, ModelInput> inputs = new HashMap<>();
+            for (int i = 0; i < sample.source.size(); i++) {
+                String path = sample.source.get(i);
+                if (path == null || path.isBlank()) break;
+                File file = new File(path.trim());
+                if (!file.isAbsolute()) {
+                    String relative = path.trim();
+                    file = new File(transformation.folderPath, relative.startsWith("./") ? relative.substring(2) : relative);
+                }
+                if (!file.isFile()) break;
+                inputs.put(transformation.inputMetamodels.get(i).name, ModelInput.file(file.getAbsolutePath(),
+                    ModelFormat.of(null, file.getName())));
+            }
+            if (inputs.size() == transformation.inputMetamodels.size()) {
+                samples.add(inputs);
+            }
+        }
+        return samples;
+    }
+}
@@ -1,36 +1,51 @@
 package fr.imta.naomod.atl.runners;
 
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
 import java.util.Map;
 
+import org.eclipse.emf.ecore.EObject;
 import org.eclipse.emf.ecore.EPackage;
 import org.eclipse.emf.ecore.EcorePackage;
+import org.eclipse.emf.ecore.resource.Resource;
 import org.eclipse.emf.ecore.resource.ResourceSet;
+import org.eclipse.emf.ecore.resource.impl.ResourceFactoryRegistryImpl;
 import org.eclipse.emf.ecore.resource.impl.ResourceSetImpl;
 import org.eclipse.emf.ecore.xmi.impl.EcoreResourceFactoryImpl;
 import org.eclipse.emf.ecore.xmi.impl.XMIResourceFactoryImpl;
 import org.eclipse.m2m.atl.emftvm.impl.resource.EMFTVMResourceFactoryImpl;
 
+import fr.imta.naomod.atl.Log;
+import fr.imta.naomod.atl.Metrics;
 import fr.imta.naomod.atl.Transformation;
 
+/**
+ * Base class of the ATL runners.
+ *
+ * Runners are shared by all requests: state that is only read once loaded
+ * (metamodels) lives in the shared {@link MetamodelRegistry}, while every
+ * execution works in its own ResourceSet created by
+ * {@link #createResourceSet()}.
+ */
 public abstract class ATLRunner {
-    protected ResourceSet resourceSet;
+    // factories are stateless, so all resource sets can share them
+    private static final Resource.Factory.Registry RESOURCE_FACTORIES = new ResourceFactoryRegistryImpl();
 
-    public ATLRunner() {
-        this.resourceSet = new ResourceSetImpl();
-
-        resourceSet.getResourceFactoryRegistry().getExtensionToFactoryMap().put(
+    static {
+        RESOURCE_FACTORIES.getExtensionToFactoryMap().put(
             "emftvm",
             new EMFTVMResourceFactoryImpl()
         );
-        resourceSet.getResourceFactoryRegistry().getExtensionToFactoryMap().put(
+        RESOURCE_FACTORIES.getExtensionToFactoryMap().put(
             "ecore",
             new EcoreResourceFactoryImpl()
         );
-        resourceSet.getResourceFactoryRegistry().getExtensionToFactoryMap().put(
+        RESOURCE_FACTORIES.getExtensionToFactoryMap().put(
             "xmi",
             new XMIResourceFactoryImpl()
         );
-        resourceSet.getResourceFactoryRegistry().getExtensionToFactoryMap().put(
+        RESOURCE_FACTORIES.getExtensionToFactoryMap().put(
             "",
             new XMIResourceFactoryImpl()
         );
@@ -38,5 +53,136 @@ public abstract class ATLRunner {
         EPackage.Registry.INSTANCE.put(EcorePackage.eNS_URI, EcorePackage.eINSTANCE);
     }
 
-    public abstract String applyTransformation(Map<String, String> sources, Transformation transfo) throws Exception;
+    /**
+     * Runs a transformation in the given execution ResourceSet.
+     *
+     * @return the output resources by output model name, in the order of the
+     *         output metamodels. A resource is null when nothing was generated.
+     */
+    protected abstract Map<String, Resource> execute(Map<String, ModelInput> sources, Transformation transfo, ResourceSet resourceSet) throws Exception;
+
+    /**
+     * Runs a transformation and keeps its output models in memory. The result
+     * must be closed to release them.
+     */
+    public TransformationResult run(Map<String, ModelInput> sources, Transformation transfo) throws Exception {
+        ResourceSet resourceSet = createResourceSet();
+        try (Metrics.Scope scope = Metrics.getInstance().enter(transfo)) {
+            Map<String, Resource> outputs = execute(sources, transfo, resourceSet);
+            return new TransformationResult(this, transfo, resourceSet, outputs, scope.getRunNanos());
+        } catch (Exception | Error e) {
+            dispose(resourceSet);
+            throw e;
+        }
+    }
+
+    /**
+     * Applies a transformation, writing each output model to the sink as
+     * soon as it is serialized.
+     */
+    public void applyTransformation(Map<String, ModelInput> sources, Transformation transfo, OutputSink sink,
+            ModelFormat format) throws Exception {
+        // models of this request must not outlive it
+        try (TransformationResult result = run(sources, transfo)) {
+            result.save(sink, format);
+        }
+    }
+
+    /**
+     * Creates the ResourceSet of a single execution. It must not be shared
+     * between threads and is discarded once the execution is over.
+     */
+    protected ResourceSet createResourceSet() {
+        return newResourceSet();
+    }
+
+    static ResourceSet newResourceSet() {
+        return withFactories(new ResourceSetImpl());
+    }
+
+    static ResourceSet withFactories(ResourceSet resourceSet) {
+        resourceSet.setResourceFactoryRegistry(RESOURCE_FACTORIES);
+        return resourceSet;
+    }
+
+    /**
+     * Returns the metamodel at the given path from the process-wide
+     * {@link MetamodelRegistry}. The returned resource must only be read.
+     */
+    protected Resource getMetamodel(String path) throws IOException {
+        return MetamodelRegistry.getInstance().get(path);
+    }
+
+    /**
+     * Prepares what the executions of a transformation need (metamodels,
+     * compiled modules), ahead of its first request.
+     */
+    public void warmup(Transformation transfo) throws Exception {
+        try (Metrics.Scope scope = Metrics.getInstance().enter(transfo)) {
+            prepare(transfo);
+        }
+    }
+
+    /**
+     * Does the work of {@link #warmup(Transformation)}, nothing by default.
+     */
+    protected void prepare(Transformation transfo) throws Exception {
+    }
+
+    /**
+     * Hits and misses of the caches of this runner.
+     */
+    public Map<String, Object> getStats() {
+        return new LinkedHashMap<>();
+    }
+
+    /**
+     * Makes the packages of a shared metamodel visible to an execution
+     * ResourceSet, so that models conforming to it can be loaded.
+     */
+    protected void registerPackages(ResourceSet resourceSet, Resource metamodel) {
+        for (EObject o : metamodel.getContents()) {
+            if (o instanceof EPackage pkg) {
+                registerPackage(resourceSet, pkg);
+            }
+        }
+    }
+
+    private void registerPackage(ResourceSet resourceSet, EPackage pkg) {
+        resourceSet.getPackageRegistry().put(pkg.getNsURI(), pkg);
+        for (EPackage sub : pkg.getESubpackages()) {
+            registerPackage(resourceSet, sub);
+        }
+    }
+
+    /**
+     * Returns the resource of the input model with the given name.
+     */
+    protected Resource loadInput(Map<String, ModelInput> sources, String name, ResourceSet resourceSet) throws IOException {
+        ModelInput input = sources.get(name);
+        if (input == null) {
+            throw new IllegalArgumentException("Missing input model " + name);
+        }
+        long start = System.nanoTime();
+        Resource resource = input.load(resourceSet, name);
+        Metrics.getInstance().record(Metrics.Phase.UPLOAD_PARSE, System.nanoTime() - start);
+        return resource;
+    }
+
+    /**
+     * Unloads and evicts all the resources of an execution ResourceSet, so
+     * that the models of a request are released as soon as it is over even if
+     * something still references the ResourceSet.
+     */
+    protected void dispose(ResourceSet resourceSet) {
+        for (Resource resource : new ArrayList<>(resourceSet.getResources())) {
+            try {
+                resource.unload();
+            } catch (RuntimeException e) {
+                Log.error("Error unloading " + resource.getURI() + ": " + e.getMessage());
+            }
+        }
+        resourceSet.getResources().clear();
+        resourceSet.getPackageRegistry().clear();
+    }
 }
@@ -0,0 +1,142 @@
+package fr.imta.naomod.atl.runners;
+
+import java.io.IOException;
+import java.io.Reader;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.eclipse.m2m.atl.engine.compiler.AtlCompiler;
+import org.eclipse.m2m.atl.engine.compiler.AtlStandaloneCompiler;
+import org.eclipse.m2m.atl.engine.compiler.CompileTimeError;
+
+import fr.imta.naomod.atl.Log;
+import fr.imta.naomod.atl.Metrics;
+
+/**
+ * Compiled ASM modules for EMFVM, kept in memory and keyed by the SHA-256 of
+ * their ATL source.
+ *
+ * A source that does not compile is remembered as such: asking again for the
+ * same content fails right away with the same errors instead of compiling it
+ * again.
+ */
+class AsmCache {
+    private final Map<String, Entry> modules = new ConcurrentHashMap<>();
+    private final Map<String, Object> locks = new ConcurrentHashMap<>();
+
+    private final AtomicLong hits = new AtomicLong();
+    private final AtomicLong misses = new AtomicLong();
+
+    // either asm or error is set
+    private record Entry(String hash, byte[] asm, String error) {}
+
+    /**
+     * Returns the ASM bytes of an ATL file, or the content of an .asm file
+     * (precompiled libraries).
+     */
+    byte[] get(String sourcePath) throws IOException {
+        Path source = Path.of(sourcePath);
+        String hash = FileHashes.sha256(source);
+
+        Entry entry = modules.get(sourcePath);
+        if (entry == null || !entry.hash.equals(hash)) {
+            synchronized (locks.computeIfAbsent(sourcePath, k -> new Object())) {
+                entry = modules.get(sourcePath);
+                if (entry == null || !entry.hash.equals(hash)) {
+                    misses.incrementAndGet();
+                    entry = load(source, hash);
+                    modules.put(sourcePath, entry);
+                } else {
+                    hits.incrementAndGet();
+                }
+            }
+        } else {
+            hits.incrementAndGet();
+        }
+
+        if (entry.error != null) {
+            throw new UnsupportedOperationException(entry.error);
+        }
+        return entry.asm;
+    }
+
+    long getHits() {
+        return hits.get();
+    }
+
+    long getMisses() {
+        return misses.get();
+    }
+
+    int size() {
+        return modules.size();
+    }
+
+    private Entry load(Path source, String hash) throws IOException {
+        if (source.toString().endsWith(".asm")) {
+            return new Entry(hash, Files.readAllBytes(source), null);
+        }
+
+        // compiled by a previous run, if the source did not change since
+        SnapshotStore snapshot = SnapshotStore.getInstance();
+        byte[] stored = snapshot.get(SnapshotStore.Kind.ASM_MODULE, source);
+        if (stored != null) {
+            return new Entry(hash, stored, null);
+        }
+
+        AtlStandaloneCompiler compiler = AtlCompiler.getCompiler(AtlCompiler.DEFAULT_COMPILER_NAME);
+        Path compiled = Files.createTempFile("atl-module-", ".asm");
+        try {
+            CompileTimeError[] errors;
+            long start = System.nanoTime();
+            try (Reader reader = Files.newBufferedReader(source)) {
+                errors = compiler.compile(reader, compiled.toString());
+            }
+            Metrics.getInstance().record(Metrics.Phase.COMPILE, System.nanoTime() - start);
+
+            List<String> messages = new ArrayList<>();
+            for (CompileTimeError e : errors) {
+                Log.error(e.getSeverity() + " - " + e.getLocation() + " - " + e.getDescription());
+                if (e.getSeverity().equals("error")) {
+                    messages.add(e.getLocation() + " - " + e.getDescription());
+                }
+            }
+            if (!messages.isEmpty()) {
+                return new Entry(hash, null, "Cannot compile " + source.getFileName() + ": " + String.join(", ", messages));
+            }
+
+            byte[] asm = Files.readAllBytes(compiled);
+            writeNextToSource(source, asm);
+            snapshot.put(SnapshotStore.Kind.ASM_MODULE, source, asm);
+            return new Entry(hash, asm, null);
+        } finally {
+            Files.deleteIfExists(compiled);
+        }
+    }
+
+    // keep an .asm file next to the source for tools reading it, never leaving a partial file behind
+    private void writeNextToSource(Path source, byte[] asm) {
+        Path target = Path.of(source.toString().replace(".atl", ".asm"));
+        Path tmp = null;
+        try {
+            tmp = Files.createTempFile(target.getParent(), target.getFileName().toString(), ".tmp");
+            Files.write(tmp, asm);
+            Files.move(tmp, target, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+        } catch (IOException | UnsupportedOperationException e) {
+            Log.error("Cannot write " + target + ", keeping it in memory only: " + e.getMessage());
+            if (tmp != null) {
+                try {
+                    Files.deleteIfExists(tmp);
+                } catch (IOException ignored) {
+                    // nothing else to do
+                }
+            }
+        }
+    }
+}
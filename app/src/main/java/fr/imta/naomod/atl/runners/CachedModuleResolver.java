@@ -0,0 +1,54 @@
+package fr.imta.naomod.atl.runners;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.eclipse.emf.common.util.URI;
+import org.eclipse.emf.ecore.resource.Resource;
+import org.eclipse.emf.ecore.resource.ResourceSet;
+import org.eclipse.m2m.atl.emftvm.Module;
+import org.eclipse.m2m.atl.emftvm.util.ModuleNotFoundException;
+import org.eclipse.m2m.atl.emftvm.util.ModuleResolver;
+
+/**
+ * Resolves the modules of an execution (the transformation and the libraries
+ * it imports) from the {@link ModuleCache}, instead of parsing them again.
+ */
+class CachedModuleResolver implements ModuleResolver {
+    private final String prefix;
+    private final ModuleCache cache;
+    private final ResourceSet resourceSet;
+    private final List<String> resolved = new ArrayList<>();
+
+    /**
+     * @param prefix      folder of the modules, ending with a "/"
+     * @param resourceSet ResourceSet receiving the module copies
+     */
+    CachedModuleResolver(String prefix, ModuleCache cache, ResourceSet resourceSet) {
+        this.prefix = prefix;
+        this.cache = cache;
+        this.resourceSet = resourceSet;
+    }
+
+    @Override
+    public Module resolveModule(String name) throws ModuleNotFoundException {
+        String path = prefix + name.replace("::", "/");
+        try {
+            Module module = cache.get(path + ".atl");
+            resolved.add(path + ".atl");
+            Resource resource = resourceSet.createResource(URI.createFileURI(path + ".emftvm"));
+            resource.getContents().add(module);
+            return module;
+        } catch (IOException e) {
+            throw new ModuleNotFoundException("Cannot load module " + name + ": " + e.getMessage());
+        }
+    }
+
+    /**
+     * ATL paths of the modules resolved so far.
+     */
+    List<String> getResolved() {
+        return resolved;
+    }
+}
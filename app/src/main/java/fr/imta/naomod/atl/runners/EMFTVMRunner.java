@@ -3,129 +3,141 @@ package fr.imta.naomod.atl.runners;
 import org.eclipse.emf.common.util.URI;
 import org.eclipse.emf.ecore.EPackage;
 import org.eclipse.emf.ecore.resource.Resource;
-import org.eclipse.m2m.atl.core.emf.EMFInjector;
-import org.eclipse.m2m.atl.core.emf.EMFModelFactory;
-import org.eclipse.m2m.atl.core.emf.EMFReferenceModel;
+import org.eclipse.emf.ecore.resource.ResourceSet;
 import org.eclipse.m2m.atl.emftvm.EmftvmFactory;
 import org.eclipse.m2m.atl.emftvm.ExecEnv;
 import org.eclipse.m2m.atl.emftvm.Metamodel;
 import org.eclipse.m2m.atl.emftvm.Model;
-import org.eclipse.m2m.atl.emftvm.compiler.AtlToEmftvmCompiler;
-import org.eclipse.m2m.atl.emftvm.util.DefaultModuleResolver;
 
+import fr.imta.naomod.atl.Log;
+import fr.imta.naomod.atl.Metrics;
 import fr.imta.naomod.atl.NamedFile;
 import fr.imta.naomod.atl.Transformation;
 
-import java.io.FileInputStream;
 import java.io.IOException;
-import java.io.InputStream;
-import java.nio.file.Files;
 import java.nio.file.Path;
-import java.util.HashMap;
+import java.util.LinkedHashMap;
 import java.util.Map;
-import java.util.UUID;
 
 public class EMFTVMRunner extends ATLRunner {
+    private final ModuleCache modules = new ModuleCache(this::createResourceSet);
+    private final EnvironmentPool<PooledExecEnv> environments =
+        new EnvironmentPool<>(EnvironmentPool.DEFAULT_SIZE, this::createEnvironment);
+
+    /**
+     * ExecEnv with the metamodels of a transformation registered and its
+     * module loaded, reset by {@link ExecEnv#clearModels()} between executions.
+     */
+    private class PooledExecEnv implements EnvironmentPool.Environment {
+        final ExecEnv execEnv = EmftvmFactory.eINSTANCE.createExecEnv();
+        // holds the module copies of this environment
+        final ResourceSet moduleResourceSet = createResourceSet();
+        final Map<String, Resource> metamodels = new LinkedHashMap<>();
+        final Map<String, String> moduleHashes = new LinkedHashMap<>();
+
+        @Override
+        public boolean isCurrent() throws IOException {
+            for (var metamodel : metamodels.entrySet()) {
+                if (getMetamodel(metamodel.getKey()) != metamodel.getValue()) return false;
+            }
+            for (var module : moduleHashes.entrySet()) {
+                if (!modules.hash(module.getKey()).equals(module.getValue())) return false;
+            }
+            return true;
+        }
+    }
 
     @Override
-    public String applyTransformation(Map<String, String> sources, Transformation transfo) throws IOException {
-        ExecEnv execEnv = EmftvmFactory.eINSTANCE.createExecEnv();
-
-        // Register input metamodels and load corresponding models
+    protected Map<String, Resource> execute(Map<String, ModelInput> sources, Transformation transfo, ResourceSet resourceSet) throws Exception {
+        PooledExecEnv environment = environments.borrow(transfo);
+        ExecEnv execEnv = environment.execEnv;
 
         // Load input model, we assume input model contains all sources
         for (NamedFile metamodel : transfo.inputMetamodels) {
-            Model sourceModel = loadModel(sources.get(metamodel.name));
-            registerMetamodel(execEnv, transfo.folderPath + "/" + metamodel.path);
+            registerPackages(resourceSet, environment.metamodels.get(transfo.folderPath + "/" + metamodel.path));
+            Model sourceModel = EmftvmFactory.eINSTANCE.createModel();
+            sourceModel.setResource(loadInput(sources, metamodel.name, resourceSet));
 
             execEnv.registerInputModel(metamodel.name, sourceModel);
         }
 
-        // Register output metamodels
-        Map<String, Resource> targets = new HashMap<>();
+        Map<String, Resource> targets = new LinkedHashMap<>();
         for (NamedFile metamodel : transfo.outputMetamodels) {
-            // Create and register output model
-            String targetPath = UUID.randomUUID() + ".xmi";
-            Model targetModel = createModel(targetPath);
+            // Create and register output model, it is never written to disk
+            Model targetModel = createModel(resourceSet, metamodel.name + ".xmi");
             targets.put(metamodel.name, targetModel.getResource());
             execEnv.registerOutputModel(metamodel.name, targetModel);
-            registerMetamodel(execEnv,  transfo.folderPath + "/" + metamodel.path);
         }
 
-        // Compile the ATL module
-        compileATLModule(transfo.folderPath + "/" + transfo.atlFile);
+        // Run the transformation
+        long start = System.nanoTime();
+        execEnv.run(null);
+        Metrics.getInstance().record(Metrics.Phase.RUN, System.nanoTime() - start);
 
+        // only reuse environments that completed, a failed run may leave any state behind
+        execEnv.clearModels();
+        environments.release(transfo, environment);
+        return targets;
+    }
 
-        // Load and run the transformation
-        Path transofPath = Path.of( transfo.folderPath + "/" + transfo.atlFile); //fixme: only one file for now
-        DefaultModuleResolver moduleResolver = new DefaultModuleResolver(transofPath.getParent() + "/", resourceSet);
-        execEnv.loadModule(moduleResolver, transofPath.getFileName().toString().replace(".atl", ""));
-        execEnv.run(null);
+    @Override
+    protected void prepare(Transformation transfo) throws Exception {
+        environments.warmup(transfo);
+    }
+
+    @Override
+    public Map<String, Object> getStats() {
+        Map<String, Object> stats = super.getStats();
+        stats.put("moduleCacheEntries", modules.size());
+        stats.put("moduleCacheHits", modules.getHits());
+        stats.put("moduleCacheMisses", modules.getMisses());
+        environments.putStats(stats, "execEnvPool");
+        return stats;
+    }
+
+    private PooledExecEnv createEnvironment(Transformation transfo) throws IOException {
+        PooledExecEnv environment = new PooledExecEnv();
 
-        StringBuilder result = new StringBuilder();
-        // Save and return the result
-        for (var out : targets.entrySet()) {
-            Resource r = out.getValue();
-            String name = out.getKey();
-            r.save(null);
-            Path p = Path.of(r.getURI().path());
-            String content = Files.readString(p);
-            Files.delete(p);
-
-            result.append("***************" + name + "*****************\n");
-            result.append(content);
-            result.append("**********************************\n");
+        // Register input and output metamodels
+        for (NamedFile metamodel : transfo.inputMetamodels) {
+            registerMetamodel(environment, transfo.folderPath + "/" + metamodel.path);
+        }
+        for (NamedFile metamodel : transfo.outputMetamodels) {
+            registerMetamodel(environment, transfo.folderPath + "/" + metamodel.path);
         }
-        return result.toString();
+
+        // Load the ATL module, only compiled when its source changed
+        Path transofPath = Path.of( transfo.folderPath + "/" + transfo.atlFile); //fixme: only one file for now
+        CachedModuleResolver moduleResolver = new CachedModuleResolver(transofPath.getParent() + "/", modules, environment.moduleResourceSet);
+        long start = System.nanoTime();
+        environment.execEnv.loadModule(moduleResolver, transofPath.getFileName().toString().replace(".atl", ""));
+        Metrics.getInstance().record(Metrics.Phase.MODULE_LOAD, System.nanoTime() - start);
+        for (String module : moduleResolver.getResolved()) {
+            environment.moduleHashes.put(module, modules.hash(module));
+        }
+        return environment;
     }
 
-    private void registerMetamodel(ExecEnv execEnv, String path) throws IOException {
+    private void registerMetamodel(PooledExecEnv environment, String path) throws IOException {
+        long start = System.nanoTime();
         Metamodel metamodel = EmftvmFactory.eINSTANCE.createMetamodel();
-        Resource metamodelResource = resourceSet.getResource(URI.createFileURI(path), true);
-
-        // Inject primitive types for metamodel that have a PrimitiveType packages
-        EMFModelFactory factory = new EMFModelFactory();
-        EMFInjector injector = new EMFInjector();
-        EMFReferenceModel metamodelRef = (EMFReferenceModel) factory.newReferenceModel();
-        injector.inject(metamodelRef, metamodelResource);
-        try {
-            injector.inject(metamodelRef, (Resource)null);
-        } catch (NullPointerException e) {
-            // ignore
-        }
+        Resource metamodelResource = getMetamodel(path);
+        environment.metamodels.put(path, metamodelResource);
 
         metamodel.setResource(metamodelResource);
         for (var p : metamodelResource.getContents()) {
             if (p instanceof EPackage pkg) {
-                System.err.println("Registering metamodel: " + pkg.getName());
-                resourceSet.getPackageRegistry().put(pkg.getNsURI(), p);
-                execEnv.registerMetaModel(pkg.getName(), metamodel);
+                Log.info("Registering metamodel: " + pkg.getName());
+                environment.execEnv.registerMetaModel(pkg.getName(), metamodel);
             }
         }
+        Metrics.getInstance().record(Metrics.Phase.METAMODEL_LOAD, System.nanoTime() - start);
     }
 
-    private Model loadModel(String path) throws IOException {
-        System.err.println("Loading model: " + path);
-        Resource inputResource = resourceSet.getResource(URI.createFileURI(path), true);
-        Model model = EmftvmFactory.eINSTANCE.createModel();
-        model.setResource(inputResource);
-        return model;
-    }
-
-    private Model createModel(String path) {
-        Resource outputResource = resourceSet.createResource(URI.createFileURI(path));
+    private Model createModel(ResourceSet resourceSet, String path) {
+        Resource outputResource = resourceSet.createResource(URI.createURI(path));
         Model model = EmftvmFactory.eINSTANCE.createModel();
         model.setResource(outputResource);
         return model;
     }
-
-    private void compileATLModule(String atlPath) throws IOException {
-        // TODO: skip compilation if file already exists
-        AtlToEmftvmCompiler compiler = new AtlToEmftvmCompiler();
-        String emftvmPath = atlPath.replace(".atl", ".emftvm");
-        
-        try (InputStream fin = new FileInputStream(atlPath)) {
-            compiler.compile(fin, emftvmPath);
-        }
-    }
 }
@@ -1,136 +1,172 @@
 package fr.imta.naomod.atl.runners;
 
-import java.io.FileInputStream;
-import java.io.FileNotFoundException;
-import java.io.FileReader;
+import java.io.ByteArrayInputStream;
 import java.io.IOException;
-import java.io.InputStream;
-import java.nio.file.Files;
-import java.nio.file.Path;
 import java.util.Collections;
-import java.util.HashMap;
+import java.util.LinkedHashMap;
 import java.util.Map;
-import java.util.UUID;
 
 import org.eclipse.core.runtime.NullProgressMonitor;
 import org.eclipse.emf.common.util.URI;
 import org.eclipse.emf.ecore.resource.Resource;
-import org.eclipse.m2m.atl.core.ATLCoreException;
+import org.eclipse.emf.ecore.resource.ResourceSet;
 import org.eclipse.m2m.atl.core.emf.EMFInjector;
 import org.eclipse.m2m.atl.core.emf.EMFModel;
 import org.eclipse.m2m.atl.core.emf.EMFModelFactory;
 import org.eclipse.m2m.atl.core.emf.EMFReferenceModel;
 import org.eclipse.m2m.atl.core.launch.ILauncher;
-import org.eclipse.m2m.atl.engine.compiler.AtlCompiler;
-import org.eclipse.m2m.atl.engine.compiler.AtlStandaloneCompiler;
-import org.eclipse.m2m.atl.engine.compiler.CompileTimeError;
 import org.eclipse.m2m.atl.engine.emfvm.launch.EMFVMLauncher;
 
+import fr.imta.naomod.atl.Metrics;
 import fr.imta.naomod.atl.NamedFile;
 import fr.imta.naomod.atl.Transformation;
 
 public class EMFVMRunner extends ATLRunner {
+    private final AsmCache modules = new AsmCache();
+    private final EnvironmentPool<PooledLauncher> environments =
+        new EnvironmentPool<>(EnvironmentPool.DEFAULT_SIZE, this::createEnvironment);
+
+    /**
+     * Launcher with the metamodels of a transformation injected and its
+     * modules parsed, initialized again before each execution.
+     */
+    private class PooledLauncher implements EnvironmentPool.Environment {
+        final EMFVMLauncher launcher = new EMFVMLauncher();
+        final EMFModelFactory factory = new EMFModelFactory();
+        final Map<String, Resource> metamodels = new LinkedHashMap<>();
+        final Map<String, EMFReferenceModel> referenceModels = new LinkedHashMap<>();
+        final Map<String, Object> libraries = new LinkedHashMap<>();
+        final Map<String, String> sourceHashes = new LinkedHashMap<>();
+        Object asm;
+
+        @Override
+        public boolean isCurrent() throws IOException {
+            for (var metamodel : metamodels.entrySet()) {
+                if (getMetamodel(metamodel.getKey()) != metamodel.getValue()) return false;
+            }
+            for (var source : sourceHashes.entrySet()) {
+                if (!FileHashes.sha256(source.getKey()).equals(source.getValue())) return false;
+            }
+            return true;
+        }
+    }
 
     @Override
-    public String applyTransformation(Map<String, String> sources, Transformation transfo) throws ATLCoreException, IOException {
-        // Create factory and injector
-		EMFModelFactory factory = new EMFModelFactory();
-		EMFInjector emfinjector = new EMFInjector();
+    protected Map<String, Resource> execute(Map<String, ModelInput> sources, Transformation transfo, ResourceSet resourceSet) throws Exception {
+        EMFInjector emfinjector = new EMFInjector();
         String pathPrefix = transfo.folderPath;
 
-        EMFVMLauncher launcher = new EMFVMLauncher();
+        PooledLauncher environment = environments.borrow(transfo);
+        EMFVMLauncher launcher = environment.launcher;
         launcher.initialize(Collections.emptyMap());
 
-
-        // load source metamodel
+        // load source models
         for (NamedFile inMM : transfo.inputMetamodels) {
-            EMFReferenceModel inMetamodel = (EMFReferenceModel) factory.newReferenceModel();
-            emfinjector.inject(inMetamodel, pathPrefix + "/" + inMM.path);
+            String path = pathPrefix + "/" + inMM.path;
+            registerPackages(resourceSet, environment.metamodels.get(path));
 
-            // load source model
-            EMFModel input = (EMFModel) factory.newModel(inMetamodel);
-            emfinjector.inject(input, sources.get(inMM.name));
+            EMFModel input = (EMFModel) environment.factory.newModel(environment.referenceModels.get(path));
+            emfinjector.inject(input, loadInput(sources, inMM.name, resourceSet));
 
             launcher.addInModel(input, inMM.name, inMM.getFileName(pathPrefix));
         }
 
-        // load target metamodel
-        Map<String, EMFModel> outputs = new HashMap<>();
+        // create target models
+        Map<String, EMFModel> outputs = new LinkedHashMap<>();
         for (NamedFile outMM : transfo.outputMetamodels) {
-            EMFReferenceModel outMetamodel = (EMFReferenceModel) factory.newReferenceModel();
-            emfinjector.inject(outMetamodel, pathPrefix + "/" +  outMM.path);
+            EMFModel output = (EMFModel) environment.factory.newModel(
+                environment.referenceModels.get(pathPrefix + "/" + outMM.path));
 
-            // create target model
-            EMFModel output = (EMFModel) factory.newModel(outMetamodel);
-            
             launcher.addOutModel(output, outMM.name, outMM.getFileName(pathPrefix));
 
             outputs.put(outMM.name, output);
         }
 
-        // we load (and compile if needed) required libraries
-        for (var lib : transfo.libraries) {
-            String asmPath = pathPrefix + "/" + lib.path;
-            // lib does not end with .asm, so we compile it
-            if (!lib.path.endsWith("asm")) {
-                String compiledPath = asmPath.replaceAll(".atl", ".asm");
-                compileASM(asmPath, compiledPath);
-                asmPath = compiledPath;
-            }
-
-            launcher.addLibrary(lib.name, new FileInputStream(asmPath));
-
+        for (var lib : environment.libraries.entrySet()) {
+            launcher.addLibrary(lib.getKey(), lib.getValue());
         }
-        String atlPath = pathPrefix + "/" + transfo.atlFile;
-        String asmPath =  atlPath.replace(".atl", ".asm");
-		compileASM(atlPath, asmPath);
-		InputStream asm = new FileInputStream(asmPath);
-		
+
+        long start = System.nanoTime();
 		launcher.launch(
 				ILauncher.RUN_MODE, 
 				new NullProgressMonitor(), 
 				Collections.<String, Object> emptyMap(),
-				new Object[] {asm} );
+				new Object[] {environment.asm} );
+        Metrics.getInstance().record(Metrics.Phase.RUN, System.nanoTime() - start);
 
-        StringBuilder results = new StringBuilder();
+        Map<String, Resource> results = new LinkedHashMap<>();
         for (var out : outputs.entrySet()) {
-            String targetPath = UUID.randomUUID() + ".xmi";
             Resource r = out.getValue().getResource();
             String name = out.getKey();
-            String result = "";
 
             // resource is null if transformation does not generate anything
             if (r != null) {
-                r.setURI(URI.createURI(targetPath));
-                r.save(Collections.emptyMap());
-
-                result = Files.readString(Path.of(targetPath));
-                Files.delete(Path.of(targetPath));
+                // created by the launcher, move it to this execution so that it gets disposed with it
+                resourceSet.getResources().add(r);
+                r.setURI(URI.createURI(name + ".xmi"));
             }
-
-            if (outputs.size() > 1) results.append("***************" + name + "*****************\n");
-            results.append(result);
-            if (outputs.size() > 1) results.append("**********************************\n");
+            results.put(name, r);
         }
-        return results.toString();
+
+        // only reuse launchers that completed, initialize drops the models of this execution
+        launcher.initialize(Collections.emptyMap());
+        environments.release(transfo, environment);
+        return results;
+    }
+
+    @Override
+    protected void prepare(Transformation transfo) throws Exception {
+        environments.warmup(transfo);
     }
 
-	private void compileASM(String atlPath, String asmPath) throws FileNotFoundException, UnsupportedOperationException {
-        AtlStandaloneCompiler compiler = AtlCompiler.getCompiler(AtlCompiler.DEFAULT_COMPILER_NAME);
+    @Override
+    public Map<String, Object> getStats() {
+        Map<String, Object> stats = super.getStats();
+        stats.put("asmCacheEntries", modules.size());
+        stats.put("asmCacheHits", modules.getHits());
+        stats.put("asmCacheMisses", modules.getMisses());
+        environments.putStats(stats, "launcherPool");
+        return stats;
+    }
 
-        // do not compile if it already exists
-        if (!Path.of(asmPath).toFile().exists()) {
-            CompileTimeError[] errors =  compiler.compile(new FileReader(atlPath), asmPath);
+    private PooledLauncher createEnvironment(Transformation transfo) throws IOException {
+        PooledLauncher environment = new PooledLauncher();
+        EMFInjector emfinjector = new EMFInjector();
+        String pathPrefix = transfo.folderPath;
 
-            boolean hasError = false;
-            for (CompileTimeError e : errors) {
-                System.err.println(e.getSeverity() + " - " + e.getLocation() + " - " + e.getDescription());
-                if (e.getSeverity().equals("error")) {
-                    hasError = true;
-                }
-            }
-            if (hasError)
-                throw new UnsupportedOperationException();
+        // inject source and target metamodels
+        for (NamedFile metamodel : transfo.inputMetamodels) {
+            injectMetamodel(environment, emfinjector, pathPrefix + "/" + metamodel.path);
         }
-	}
+        for (NamedFile metamodel : transfo.outputMetamodels) {
+            injectMetamodel(environment, emfinjector, pathPrefix + "/" + metamodel.path);
+        }
+
+        // we parse required libraries, compiled if they are not .asm files already
+        for (var lib : transfo.libraries) {
+            environment.libraries.put(lib.name, loadModule(environment, pathPrefix + "/" + lib.path));
+        }
+        environment.asm = loadModule(environment, pathPrefix + "/" + transfo.atlFile);
+        return environment;
+    }
+
+    private void injectMetamodel(PooledLauncher environment, EMFInjector emfinjector, String path) throws IOException {
+        if (environment.metamodels.containsKey(path)) return;
+        long start = System.nanoTime();
+        Resource metamodel = getMetamodel(path);
+        EMFReferenceModel referenceModel = (EMFReferenceModel) environment.factory.newReferenceModel();
+        emfinjector.inject(referenceModel, metamodel);
+        Metrics.getInstance().record(Metrics.Phase.METAMODEL_LOAD, System.nanoTime() - start);
+        environment.metamodels.put(path, metamodel);
+        environment.referenceModels.put(path, referenceModel);
+    }
+
+    private Object loadModule(PooledLauncher environment, String sourcePath) throws IOException {
+        // hash first: a newer source compiled meanwhile is only seen as a change later
+        environment.sourceHashes.put(sourcePath, FileHashes.sha256(sourcePath));
+        long start = System.nanoTime();
+        Object module = environment.launcher.loadModule(new ByteArrayInputStream(modules.get(sourcePath)));
+        Metrics.getInstance().record(Metrics.Phase.MODULE_LOAD, System.nanoTime() - start);
+        return module;
+    }
 }
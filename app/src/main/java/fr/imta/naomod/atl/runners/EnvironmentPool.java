@@ -0,0 +1,127 @@
+package fr.imta.naomod.atl.runners;
+
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+import fr.imta.naomod.atl.Config;
+import fr.imta.naomod.atl.NamedFile;
+import fr.imta.naomod.atl.Transformation;
+
+/**
+ * Idle execution environments of each transformation, with their metamodels
+ * and module already bound, so that an execution only has to attach its
+ * models.
+ *
+ * An environment is used by a single execution at a time. When none is idle
+ * a new one is created, and at most ATL_ENV_POOL_SIZE (2 by default) idle
+ * environments are kept per transformation. An environment whose metamodels
+ * or module changed since it was created is dropped instead of reused.
+ *
+ * Environments are kept by module and by input and output models, so that a
+ * transformation whose metamodels were renamed, added or replaced in its
+ * description, or two descriptions of the same module with different
+ * metamodels, never get an environment bound to other metamodels.
+ */
+class EnvironmentPool<E extends EnvironmentPool.Environment> {
+    static final int DEFAULT_SIZE = Config.getInt("ATL_ENV_POOL_SIZE", 2);
+
+    interface Environment {
+        /**
+         * Whether the metamodels and modules bound to this environment are
+         * still the current ones.
+         */
+        boolean isCurrent() throws Exception;
+    }
+
+    interface Factory<E> {
+        E create(Transformation transformation) throws Exception;
+    }
+
+    private final int size;
+    private final Factory<E> factory;
+    private final Map<String, Deque<E>> idle = new ConcurrentHashMap<>();
+
+    private final AtomicLong reused = new AtomicLong();
+    private final AtomicLong created = new AtomicLong();
+    private final AtomicLong dropped = new AtomicLong();
+
+    EnvironmentPool(int size, Factory<E> factory) {
+        this.size = size;
+        this.factory = factory;
+    }
+
+    /**
+     * Takes an idle environment of the transformation, or creates one.
+     */
+    E borrow(Transformation transformation) throws Exception {
+        Deque<E> environments = idle.get(key(transformation));
+        while (environments != null) {
+            E environment;
+            synchronized (environments) {
+                environment = environments.pollFirst();
+            }
+            if (environment == null) break;
+            if (environment.isCurrent()) {
+                reused.incrementAndGet();
+                return environment;
+            }
+            dropped.incrementAndGet();
+        }
+
+        created.incrementAndGet();
+        return factory.create(transformation);
+    }
+
+    /**
+     * Gives back an environment that was reset after its execution. An
+     * environment left in an unknown state (failed execution) must not be
+     * released, it is simply dropped.
+     */
+    void release(Transformation transformation, E environment) {
+        Deque<E> environments = idle.computeIfAbsent(key(transformation), k -> new ArrayDeque<>());
+        synchronized (environments) {
+            if (environments.size() < size) {
+                environments.addFirst(environment);
+                return;
+            }
+        }
+        dropped.incrementAndGet();
+    }
+
+    /**
+     * Creates an idle environment for the transformation if it has none yet.
+     */
+    void warmup(Transformation transformation) throws Exception {
+        Deque<E> environments = idle.get(key(transformation));
+        if (size == 0 || environments != null && !environments.isEmpty()) return;
+        created.incrementAndGet();
+        release(transformation, factory.create(transformation));
+    }
+
+    void putStats(Map<String, Object> stats, String prefix) {
+        int idleCount = 0;
+        for (Deque<E> environments : idle.values()) {
+            synchronized (environments) {
+                idleCount += environments.size();
+            }
+        }
+        stats.put(prefix + "Idle", idleCount);
+        stats.put(prefix + "Reused", reused.get());
+        stats.put(prefix + "Created", created.get());
+        stats.put(prefix + "Dropped", dropped.get());
+    }
+
+    private static String key(Transformation transformation) {
+        StringBuilder key = new StringBuilder(transformation.folderPath).append('/').append(transformation.atlFile);
+        for (NamedFile metamodel : transformation.inputMetamodels) {
+            key.append("|in:").append(metamodel.name).append('=').append(metamodel.path);
+        }
+        for (NamedFile metamodel : transformation.outputMetamodels) {
+            key.append("|out:").append(metamodel.name).append('=').append(metamodel.path);
+        }
+        return key.toString();
+    }
+}
@@ -0,0 +1,62 @@
+package fr.imta.naomod.atl.runners;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.HexFormat;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * SHA-256 of source files. A file is only hashed again when its modification
+ * time or size changes.
+ */
+public class FileHashes {
+    private static final Map<Path, Entry> hashes = new ConcurrentHashMap<>();
+
+    private record Entry(long lastModified, long size, String hash) {}
+
+    private FileHashes() {}
+
+    public static String sha256(Path path) throws IOException {
+        Path key = path.toAbsolutePath().normalize();
+        BasicFileAttributes attributes = Files.readAttributes(key, BasicFileAttributes.class);
+        long lastModified = attributes.lastModifiedTime().toMillis();
+        long size = attributes.size();
+
+        Entry entry = hashes.get(key);
+        if (entry == null || entry.lastModified != lastModified || entry.size != size) {
+            entry = new Entry(lastModified, size, sha256(Files.readAllBytes(key)));
+            hashes.put(key, entry);
+        }
+        return entry.hash;
+    }
+
+    /**
+     * Records the hash of a file computed by a previous run, only used while
+     * the file keeps the same modification time and size.
+     */
+    static void seed(Path path, long lastModified, long size, String hash) {
+        hashes.putIfAbsent(path.toAbsolutePath().normalize(), new Entry(lastModified, size, hash));
+    }
+
+    public static String sha256(String path) throws IOException {
+        return sha256(Path.of(path));
+    }
+
+    public static String sha256(byte[] content) {
+        return HexFormat.of().formatHex(digest().digest(content));
+    }
+
+    public static MessageDigest digest() {
+        try {
+            return MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException e) {
+            // every JVM has to provide SHA-256
+            throw new IllegalStateException(e);
+        }
+    }
+}
@@ -0,0 +1,237 @@
+package fr.imta.naomod.atl.runners;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.eclipse.emf.common.util.URI;
+import org.eclipse.emf.ecore.EClass;
+import org.eclipse.emf.ecore.EClassifier;
+import org.eclipse.emf.ecore.EPackage;
+import org.eclipse.emf.ecore.resource.Resource;
+import org.eclipse.emf.ecore.resource.ResourceSet;
+import org.eclipse.emf.ecore.resource.impl.ResourceSetImpl;
+import org.eclipse.emf.ecore.util.EcoreUtil;
+import org.eclipse.m2m.atl.core.emf.EMFInjector;
+import org.eclipse.m2m.atl.core.emf.EMFModelFactory;
+import org.eclipse.m2m.atl.core.emf.EMFReferenceModel;
+
+import fr.imta.naomod.atl.Config;
+
+/**
+ * Process-wide registry of the metamodels used by the transformations.
+ *
+ * Each .ecore file is parsed once, on first use, and shared by all executions
+ * and runners. An entry is reloaded when its file changes, and the least
+ * recently used entries are evicted when the estimated size of the registry
+ * exceeds its budget (ATL_METAMODEL_BUDGET_MB, 256 MB by default).
+ *
+ * A metamodel referring to classes of another .ecore file gets the registered
+ * instance of that file, so that both designate the same classes.
+ *
+ * Returned resources must only be read.
+ */
+public class MetamodelRegistry {
+    // rough ratio between the in-memory size of a metamodel and its file size
+    private static final int MEMORY_PER_FILE_BYTE = 10;
+
+    private static final MetamodelRegistry instance =
+        new MetamodelRegistry(Config.getLong("ATL_METAMODEL_BUDGET_MB", 256) * 1024 * 1024);
+
+    private final long budget;
+    private long usedBytes;
+    // access ordered, guarded by this
+    private final LinkedHashMap<String, Entry> byPath = new LinkedHashMap<>(16, 0.75f, true);
+    private final Map<String, Object> locks = new ConcurrentHashMap<>();
+    // metamodels the current thread is loading, the ones they refer to being loaded meanwhile
+    private final ThreadLocal<Set<String>> loading = ThreadLocal.withInitial(HashSet::new);
+
+    private final AtomicLong hits = new AtomicLong();
+    private final AtomicLong misses = new AtomicLong();
+    private final AtomicLong evictions = new AtomicLong();
+
+    private record Entry(String path, long lastModified, long size, Resource resource) {
+        long estimatedBytes() {
+            return size * MEMORY_PER_FILE_BYTE;
+        }
+    }
+
+    public MetamodelRegistry(long budget) {
+        this.budget = budget;
+    }
+
+    public static MetamodelRegistry getInstance() {
+        return instance;
+    }
+
+    /**
+     * Returns the metamodel stored at the given path, loading it if it is not
+     * registered yet or if the file changed since it was loaded.
+     */
+    public Resource get(String path) throws IOException {
+        String key = Path.of(path).toAbsolutePath().normalize().toString();
+        BasicFileAttributes attributes;
+        try {
+            attributes = Files.readAttributes(Path.of(key), BasicFileAttributes.class);
+        } catch (NoSuchFileException e) {
+            throw new IOException("Metamodel not found: " + path, e);
+        }
+        long lastModified = attributes.lastModifiedTime().toMillis();
+        long size = attributes.size();
+
+        Entry entry = lookup(key, lastModified, size);
+        if (entry != null) {
+            hits.incrementAndGet();
+            return entry.resource;
+        }
+
+        Set<String> inProgress = loading.get();
+        if (!inProgress.isEmpty()) {
+            // referred to by a metamodel being loaded: waiting for another loader could deadlock on a cycle
+            misses.incrementAndGet();
+            return load(key, lastModified, size, inProgress).resource;
+        }
+        // load outside of the registry lock, other metamodels stay available meanwhile
+        synchronized (locks.computeIfAbsent(key, k -> new Object())) {
+            entry = lookup(key, lastModified, size);
+            if (entry != null) {
+                hits.incrementAndGet();
+                return entry.resource;
+            }
+            misses.incrementAndGet();
+            return load(key, lastModified, size, inProgress).resource;
+        }
+    }
+
+    public synchronized Map<String, Object> getStats() {
+        Map<String, Object> stats = new LinkedHashMap<>();
+        stats.put("entries", byPath.size());
+        stats.put("estimatedBytes", usedBytes);
+        stats.put("budgetBytes", budget);
+        stats.put("hits", hits.get());
+        stats.put("misses", misses.get());
+        stats.put("evictions", evictions.get());
+        return stats;
+    }
+
+    private synchronized Entry lookup(String key, long lastModified, long size) {
+        Entry entry = byPath.get(key);
+        if (entry != null && entry.lastModified == lastModified && entry.size == size) {
+            return entry;
+        }
+        return null;
+    }
+
+    // Returns the registered entry, the one of another loader of the same file if it registered first
+    private synchronized Entry register(Entry entry) {
+        Entry previous = byPath.get(entry.path);
+        if (previous != null && previous.lastModified == entry.lastModified && previous.size == entry.size) {
+            return previous;
+        }
+        byPath.put(entry.path, entry);
+        if (previous != null) {
+            usedBytes -= previous.estimatedBytes();
+        }
+        usedBytes += entry.estimatedBytes();
+
+        // evict least recently used metamodels, always keeping the one just loaded.
+        // Executions still using an evicted metamodel keep their reference to it.
+        Iterator<Entry> it = byPath.values().iterator();
+        while (usedBytes > budget && it.hasNext()) {
+            Entry eldest = it.next();
+            if (eldest == entry) continue;
+            it.remove();
+            usedBytes -= eldest.estimatedBytes();
+            evictions.incrementAndGet();
+        }
+        return entry;
+    }
+
+    private Entry load(String path, long lastModified, long size, Set<String> inProgress) throws IOException {
+        inProgress.add(path);
+        try {
+            return register(parse(path, lastModified, size));
+        } finally {
+            inProgress.remove(path);
+        }
+    }
+
+    private Entry parse(String path, long lastModified, long size) throws IOException {
+        ResourceSet resourceSet = ATLRunner.withFactories(new ResourceSetImpl() {
+            // other .ecore files are taken from the registry, a cycle back to a file being loaded is loaded here
+            @Override
+            protected Resource delegatedGetResource(URI uri, boolean loadOnDemand) {
+                if (!loadOnDemand || !uri.isFile() || !"ecore".equals(uri.fileExtension())) return null;
+                String referenced = Path.of(uri.toFileString()).toAbsolutePath().normalize().toString();
+                if (loading.get().contains(referenced)) return null;
+                try {
+                    return get(referenced);
+                } catch (IOException e) {
+                    return null;
+                }
+            }
+        });
+        // the binary form saved by a previous run is much faster to read than XMI
+        SnapshotStore snapshot = SnapshotStore.getInstance();
+        byte[] stored = snapshot.get(SnapshotStore.Kind.METAMODEL, Path.of(path));
+        Resource resource;
+        if (stored != null) {
+            resource = resourceSet.createResource(URI.createFileURI(path));
+            ModelFormat.BINARY.load(resource, new ByteArrayInputStream(stored));
+        } else {
+            resource = resourceSet.getResource(URI.createFileURI(path), true);
+            if (snapshot.isEnabled()) {
+                ByteArrayOutputStream binary = new ByteArrayOutputStream();
+                ModelFormat.BINARY.save(resource, binary);
+                snapshot.put(SnapshotStore.Kind.METAMODEL, Path.of(path), binary.toByteArray());
+            }
+        }
+        EcoreUtil.resolveAll(resource);
+        computeDerivedFeatures(resource);
+        injectPrimitiveTypes(resource);
+        return new Entry(path, lastModified, size, resource);
+    }
+
+    // Inject primitive types for metamodel that have a PrimitiveType packages
+    private static void injectPrimitiveTypes(Resource metamodelResource) {
+        EMFModelFactory factory = new EMFModelFactory();
+        EMFInjector injector = new EMFInjector();
+        EMFReferenceModel metamodelRef = (EMFReferenceModel) factory.newReferenceModel();
+        injector.inject(metamodelRef, metamodelResource);
+        try {
+            injector.inject(metamodelRef, (Resource)null);
+        } catch (NullPointerException e) {
+            // ignore
+        }
+    }
+
+    // EMF computes these lazily, do it once so that executions only read them
+    private static void computeDerivedFeatures(Resource metamodel) {
+        metamodel.getAllContents().forEachRemaining(o -> {
+            if (o instanceof EClass c) {
+                c.getEAllStructuralFeatures();
+                c.getEAllSuperTypes();
+                c.getEAllContainments();
+                c.getEAllReferences();
+                c.getEAllAttributes();
+                c.getEAllOperations();
+                c.getEIDAttribute();
+            } else if (o instanceof EPackage pkg) {
+                for (EClassifier classifier : pkg.getEClassifiers()) {
+                    classifier.getInstanceClass();
+                }
+            }
+        });
+    }
+}
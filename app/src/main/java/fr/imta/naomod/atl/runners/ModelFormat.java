@@ -0,0 +1,93 @@
+package fr.imta.naomod.atl.runners;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.Collections;
+
+import org.eclipse.emf.ecore.resource.Resource;
+import org.eclipse.emf.ecore.resource.impl.BinaryResourceImpl;
+
+/**
+ * Serialization of models: XMI, or the compact binary format of EMF, which
+ * is much cheaper to parse and print for large models.
+ *
+ * Both formats reference metamodel elements by package nsURI, so a model can
+ * be read against any instance of its metamodel registered in the
+ * ResourceSet. The format is independent of the resource implementation.
+ *
+ * The binary format reads and writes its streams a byte at a time, so they
+ * are buffered here: unbuffered file streams made it slower than XMI.
+ */
+public enum ModelFormat {
+    XMI("application/xml", "xmi"),
+    BINARY("application/x-emf-binary", "bin");
+
+    private static final int BUFFER_SIZE = 64 * 1024;
+
+    private final String contentType;
+    private final String extension;
+
+    ModelFormat(String contentType, String extension) {
+        this.contentType = contentType;
+        this.extension = extension;
+    }
+
+    public String getContentType() {
+        return contentType;
+    }
+
+    public String getExtension() {
+        return extension;
+    }
+
+    /**
+     * The format matching a media type or a file name, XMI when none does.
+     */
+    public static ModelFormat of(String contentType, String fileName) {
+        if (contentType != null && contentType.toLowerCase().startsWith(BINARY.contentType)) {
+            return BINARY;
+        }
+        if (fileName != null && fileName.toLowerCase().endsWith("." + BINARY.extension)) {
+            return BINARY;
+        }
+        return XMI;
+    }
+
+    public void save(Resource resource, OutputStream out) throws IOException {
+        if (this == XMI) {
+            resource.save(out, Collections.emptyMap());
+            return;
+        }
+        if (!(out instanceof BufferedOutputStream || out instanceof ByteArrayOutputStream)) {
+            out = new BufferedOutputStream(out, BUFFER_SIZE);
+        }
+        BinaryResourceImpl.EObjectOutputStream stream =
+            new BinaryResourceImpl.EObjectOutputStream(out, Collections.emptyMap());
+        stream.saveResource(resource);
+        stream.flush();
+        // the binary stream does not flush the one it writes to, which is left open to the caller
+        out.flush();
+    }
+
+    /**
+     * Reads a model into a resource, which must already belong to the
+     * ResourceSet where its metamodel is registered.
+     */
+    public void load(Resource resource, InputStream in) throws IOException {
+        if (this == XMI) {
+            resource.load(in, Collections.emptyMap());
+            return;
+        }
+        if (!(in instanceof BufferedInputStream || in instanceof ByteArrayInputStream)) {
+            in = new BufferedInputStream(in, BUFFER_SIZE);
+        }
+        BinaryResourceImpl.EObjectInputStream stream =
+            new BinaryResourceImpl.EObjectInputStream(in, Collections.emptyMap());
+        stream.loadResource(resource);
+    }
+}
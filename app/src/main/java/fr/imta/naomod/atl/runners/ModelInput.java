@@ -0,0 +1,112 @@
+package fr.imta.naomod.atl.runners;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipInputStream;
+
+import org.eclipse.emf.common.util.URI;
+import org.eclipse.emf.ecore.resource.Resource;
+import org.eclipse.emf.ecore.resource.ResourceSet;
+
+/**
+ * Input model of an execution: an uploaded file, a model serialized in
+ * memory, or a resource produced by a previous execution.
+ */
+public abstract class ModelInput {
+
+    /**
+     * Returns the resource of the model, loading it in the execution
+     * ResourceSet if needed.
+     */
+    abstract Resource load(ResourceSet resourceSet, String name) throws IOException;
+
+    /**
+     * Content of a serialized model, that can be read several times.
+     */
+    public interface Content {
+        InputStream open() throws IOException;
+    }
+
+    public static ModelInput file(String path) {
+        return file(path, ModelFormat.XMI);
+    }
+
+    public static ModelInput file(String path, ModelFormat format) {
+        if (format != ModelFormat.XMI) {
+            return stream(() -> Files.newInputStream(Path.of(path)), format);
+        }
+        return new ModelInput() {
+            @Override
+            Resource load(ResourceSet resourceSet, String name) {
+                return resourceSet.getResource(URI.createFileURI(path), true);
+            }
+        };
+    }
+
+    /**
+     * A model serialized in memory (or spilled to disk).
+     */
+    public static ModelInput buffer(OutputBuffer buffer, ModelFormat format) {
+        return stream(buffer::openInputStream, format);
+    }
+
+    /**
+     * A serialized model, parsed straight from its content (e.g. a request
+     * body kept in memory) without going through a file.
+     */
+    public static ModelInput stream(Content content, ModelFormat format) {
+        return new ModelInput() {
+            @Override
+            Resource load(ResourceSet resourceSet, String name) throws IOException {
+                try (InputStream in = content.open()) {
+                    return parse(resourceSet, name, in, format);
+                }
+            }
+        };
+    }
+
+    /**
+     * A model stored as an entry of a zip archive, read from its local header
+     * without extracting it (see {@link ZipEntries}). Its format is told by
+     * the extension of the entry.
+     */
+    static ModelInput zipEntry(Content zip, long offset, String entryName) {
+        return new ModelInput() {
+            @Override
+            Resource load(ResourceSet resourceSet, String name) throws IOException {
+                try (ZipInputStream in = new ZipInputStream(ZipEntries.open(zip, offset))) {
+                    ZipEntry entry = in.getNextEntry();
+                    if (entry == null || !entry.getName().equals(entryName)) {
+                        throw new IOException("No entry " + entryName + " in archive");
+                    }
+                    return parse(resourceSet, name, in, ModelFormat.of(null, entryName));
+                }
+            }
+        };
+    }
+
+    private static Resource parse(ResourceSet resourceSet, String name, InputStream in, ModelFormat format)
+            throws IOException {
+        // always an XMI resource, whatever the format it is read from
+        Resource resource = resourceSet.createResource(URI.createURI(name + ".xmi"));
+        format.load(resource, in);
+        return resource;
+    }
+
+    /**
+     * A resource already in memory, used as is. It must conform to the very
+     * metamodel instances used by the execution, and stays owned by whoever
+     * created it.
+     */
+    public static ModelInput resource(Resource resource) {
+        return new ModelInput() {
+            @Override
+            Resource load(ResourceSet resourceSet, String name) {
+                return resource;
+            }
+        };
+    }
+}
@@ -0,0 +1,146 @@
+package fr.imta.naomod.atl.runners;
+
+import java.io.ByteArrayInputStream;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Collections;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Supplier;
+
+import org.eclipse.emf.common.util.URI;
+import org.eclipse.emf.ecore.EObject;
+import org.eclipse.emf.ecore.resource.Resource;
+import org.eclipse.emf.ecore.resource.ResourceSet;
+import org.eclipse.emf.ecore.util.EcoreUtil;
+import org.eclipse.m2m.atl.emftvm.Module;
+import org.eclipse.m2m.atl.emftvm.compiler.AtlToEmftvmCompiler;
+
+import fr.imta.naomod.atl.Metrics;
+
+/**
+ * Compiled EMFTVM modules, keyed by ATL path and content hash.
+ *
+ * A module is compiled and loaded once, then every execution gets its own
+ * copy of it: an ExecEnv keeps rule state in the modules it loads, so they
+ * cannot be shared between concurrent executions.
+ */
+class ModuleCache {
+    private final Supplier<ResourceSet> resourceSets;
+    private final Map<String, Entry> modules = new ConcurrentHashMap<>();
+    private final Map<String, Object> locks = new ConcurrentHashMap<>();
+
+    private final AtomicLong hits = new AtomicLong();
+    private final AtomicLong misses = new AtomicLong();
+
+    private record Entry(String hash, Module module) {}
+
+    ModuleCache(Supplier<ResourceSet> resourceSets) {
+        this.resourceSets = resourceSets;
+    }
+
+    /**
+     * Returns a private copy of the module compiled from the given ATL file,
+     * or loaded from the .emftvm file next to it when there is no ATL source
+     * (precompiled libraries).
+     */
+    Module get(String atlPath) throws IOException {
+        Path source = source(atlPath);
+        String key = source.toString();
+        String hash = FileHashes.sha256(source);
+
+        Entry entry = modules.get(key);
+        if (entry == null || !entry.hash.equals(hash)) {
+            synchronized (locks.computeIfAbsent(key, k -> new Object())) {
+                entry = modules.get(key);
+                if (entry == null || !entry.hash.equals(hash)) {
+                    misses.incrementAndGet();
+                    entry = new Entry(hash, load(source));
+                    modules.put(key, entry);
+                } else {
+                    hits.incrementAndGet();
+                }
+            }
+        } else {
+            hits.incrementAndGet();
+        }
+
+        return EcoreUtil.copy(entry.module);
+    }
+
+    /**
+     * Hash of the current source of a module, to tell whether a module loaded
+     * earlier is still up to date.
+     */
+    String hash(String atlPath) throws IOException {
+        return FileHashes.sha256(source(atlPath));
+    }
+
+    long getHits() {
+        return hits.get();
+    }
+
+    long getMisses() {
+        return misses.get();
+    }
+
+    int size() {
+        return modules.size();
+    }
+
+    private static Path source(String atlPath) {
+        Path source = Path.of(atlPath);
+        if (!Files.exists(source)) {
+            source = Path.of(atlPath.replace(".atl", ".emftvm"));
+        }
+        return source;
+    }
+
+    private Module load(Path source) throws IOException {
+        if (source.toString().endsWith(".emftvm")) {
+            return readModule(source, Files.readAllBytes(source));
+        }
+
+        // compiled by a previous run, if the source did not change since
+        SnapshotStore snapshot = SnapshotStore.getInstance();
+        byte[] stored = snapshot.get(SnapshotStore.Kind.EMFTVM_MODULE, source);
+        if (stored != null) {
+            return readModule(source, stored);
+        }
+
+        // compile to a temporary file, the transformation folder may be read-only
+        Path compiled = Files.createTempFile("atl-module-", ".emftvm");
+        try {
+            AtlToEmftvmCompiler compiler = new AtlToEmftvmCompiler();
+            long start = System.nanoTime();
+            try (InputStream fin = new FileInputStream(source.toFile())) {
+                compiler.compile(fin, compiled.toString());
+            }
+            Metrics.getInstance().record(Metrics.Phase.COMPILE, System.nanoTime() - start);
+            byte[] content = Files.readAllBytes(compiled);
+            Module module = readModule(source, content);
+            snapshot.put(SnapshotStore.Kind.EMFTVM_MODULE, source, content);
+            return module;
+        } finally {
+            Files.deleteIfExists(compiled);
+        }
+    }
+
+    private Module readModule(Path source, byte[] content) throws IOException {
+        ResourceSet resourceSet = resourceSets.get();
+        Path path = Path.of(source.toString().replace(".atl", ".emftvm"));
+        Resource resource = resourceSet.createResource(URI.createFileURI(path.toString()));
+        resource.load(new ByteArrayInputStream(content), Collections.emptyMap());
+        EcoreUtil.resolveAll(resource);
+        for (EObject o : resource.getContents()) {
+            if (o instanceof Module module) {
+                return module;
+            }
+        }
+        throw new IOException("No EMFTVM module in " + path);
+    }
+}
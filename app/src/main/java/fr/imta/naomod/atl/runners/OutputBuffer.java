@@ -0,0 +1,109 @@
+package fr.imta.naomod.atl.runners;
+
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+import fr.imta.naomod.atl.Config;
+import fr.imta.naomod.atl.Log;
+
+/**
+ * Serialized model, kept in memory until it grows past a threshold
+ * (ATL_OUTPUT_SPILL_BYTES, 32 MB by default) and spilled to a temporary file
+ * in ATL_SPILL_DIR (the system temporary directory by default) beyond it.
+ *
+ * {@link #discard()} must be called once the content is no longer needed.
+ */
+public class OutputBuffer extends OutputStream {
+    private static final long DEFAULT_THRESHOLD = Config.getLong("ATL_OUTPUT_SPILL_BYTES", 32L * 1024 * 1024);
+    private static final String SPILL_DIR = Config.getString("ATL_SPILL_DIR", System.getProperty("java.io.tmpdir"));
+
+    private final long threshold;
+    private ByteArrayOutputStream memory = new ByteArrayOutputStream();
+    private Path file;
+    private OutputStream fileStream;
+    private long size;
+
+    public OutputBuffer() {
+        this(DEFAULT_THRESHOLD);
+    }
+
+    public OutputBuffer(long threshold) {
+        this.threshold = threshold;
+    }
+
+    @Override
+    public void write(int b) throws IOException {
+        prepare(1).write(b);
+        size++;
+    }
+
+    @Override
+    public void write(byte[] b, int off, int len) throws IOException {
+        prepare(len).write(b, off, len);
+        size += len;
+    }
+
+    @Override
+    public void flush() throws IOException {
+        if (fileStream != null) fileStream.flush();
+    }
+
+    @Override
+    public void close() throws IOException {
+        if (fileStream != null) {
+            fileStream.close();
+            fileStream = null;
+        }
+    }
+
+    public long size() {
+        return size;
+    }
+
+    public InputStream openInputStream() throws IOException {
+        close();
+        if (file != null) {
+            return Files.newInputStream(file);
+        }
+        return new ByteArrayInputStream(memory.toByteArray());
+    }
+
+    public byte[] toByteArray() throws IOException {
+        close();
+        return file != null ? Files.readAllBytes(file) : memory.toByteArray();
+    }
+
+    /**
+     * Releases the content, deleting the temporary file if any.
+     */
+    public void discard() {
+        memory = null;
+        try {
+            close();
+            if (file != null) {
+                Files.deleteIfExists(file);
+            }
+        } catch (IOException e) {
+            Log.error("Cannot delete spilled output " + file + ": " + e.getMessage());
+        }
+    }
+
+    private OutputStream prepare(int len) throws IOException {
+        if (file != null && fileStream == null) {
+            throw new IOException("Output already closed");
+        }
+        if (file == null && size + len > threshold) {
+            file = Files.createTempFile(Path.of(SPILL_DIR), "atl-output-", ".xmi");
+            fileStream = new BufferedOutputStream(Files.newOutputStream(file));
+            memory.writeTo(fileStream);
+            memory = new ByteArrayOutputStream(0);
+        }
+        return fileStream != null ? fileStream : memory;
+    }
+}
@@ -0,0 +1,16 @@
+package fr.imta.naomod.atl.runners;
+
+import java.io.IOException;
+import java.io.OutputStream;
+
+/**
+ * Destination of the output models of an execution.
+ */
+@FunctionalInterface
+public interface OutputSink {
+    /**
+     * Opens the stream receiving the serialized output model with the given
+     * name. The runner closes it once the model is written.
+     */
+    OutputStream open(String name) throws IOException;
+}
@@ -0,0 +1,354 @@
+package fr.imta.naomod.atl.runners;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.security.MessageDigest;
+import java.util.Comparator;
+import java.util.HexFormat;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.stream.Stream;
+
+import fr.imta.naomod.atl.Config;
+import fr.imta.naomod.atl.Log;
+import fr.imta.naomod.atl.NamedFile;
+import fr.imta.naomod.atl.Transformation;
+
+/**
+ * Serialized outputs of past executions, keyed by a hash of everything that
+ * determines them: the ATL source and libraries, the metamodels, the input
+ * models and the output format. ATL transformations are deterministic, so an
+ * execution with the same key can be answered from the cache.
+ *
+ * Entries are kept in memory up to ATL_RESULT_CACHE_MB (64 MB by default, 0
+ * disables the cache), the least recently used ones being evicted first.
+ * When ATL_RESULT_CACHE_DIR is set, entries are also written there and read
+ * back when they are no longer in memory; that directory is not bounded.
+ *
+ * The responses being recorded are copied in memory as they are sent, and
+ * these copies also take at most ATL_RESULT_CACHE_MB together: past that, the
+ * responses being sent are not cached.
+ */
+public class ResultCache {
+    private final long budget;
+    private final long maxEntrySize;
+    private final Path directory;
+
+    private long usedBytes;
+    // access ordered, guarded by this
+    private final LinkedHashMap<String, Entry> entries = new LinkedHashMap<>(16, 0.75f, true);
+
+    private final AtomicLong hits = new AtomicLong();
+    private final AtomicLong diskHits = new AtomicLong();
+    private final AtomicLong misses = new AtomicLong();
+    private final AtomicLong evictions = new AtomicLong();
+    // bytes copied by the recorders not yet stored nor closed
+    private final AtomicLong recordingBytes = new AtomicLong();
+    private final AtomicLong skippedRecordings = new AtomicLong();
+
+    private record Entry(String transformation, Map<String, byte[]> outputs, long size) {}
+
+    public ResultCache(long budget, Path directory) {
+        this.budget = budget;
+        // a single result must not flush the whole cache
+        this.maxEntrySize = budget / 4;
+        this.directory = directory;
+    }
+
+    public static ResultCache fromConfig() {
+        String directory = Config.getString("ATL_RESULT_CACHE_DIR", null);
+        return new ResultCache(
+            Config.getLong("ATL_RESULT_CACHE_MB", 64) * 1024 * 1024,
+            directory != null && !directory.isEmpty() ? Path.of(directory) : null);
+    }
+
+    public boolean isEnabled() {
+        return budget > 0;
+    }
+
+    /**
+     * Key of an execution of the transformation on inputs with the given
+     * content hashes, by input model name.
+     */
+    public String key(Transformation transfo, Map<String, String> inputHashes, ModelFormat format) throws IOException {
+        MessageDigest digest = FileHashes.digest();
+        update(digest, transfo.compiler);
+        update(digest, FileHashes.sha256(transfo.folderPath + "/" + transfo.atlFile));
+        for (NamedFile lib : transfo.libraries) {
+            update(digest, lib.name + "=" + FileHashes.sha256(transfo.folderPath + "/" + lib.path));
+        }
+        for (NamedFile metamodel : transfo.inputMetamodels) {
+            update(digest, metamodel.name + "=" + FileHashes.sha256(transfo.folderPath + "/" + metamodel.path));
+        }
+        for (NamedFile metamodel : transfo.outputMetamodels) {
+            update(digest, metamodel.name + "=" + FileHashes.sha256(transfo.folderPath + "/" + metamodel.path));
+        }
+        for (var input : new TreeMap<>(inputHashes).entrySet()) {
+            update(digest, input.getKey() + "=" + input.getValue());
+        }
+        update(digest, format.name());
+        return HexFormat.of().formatHex(digest.digest());
+    }
+
+    /**
+     * Writes the cached outputs of an execution to the sink, returning false
+     * if there are none.
+     */
+    public boolean load(String key, String transformation, OutputSink sink) throws IOException {
+        Entry entry;
+        synchronized (this) {
+            entry = entries.get(key);
+        }
+        if (entry != null) {
+            hits.incrementAndGet();
+        } else if ((entry = readFromDisk(key, transformation)) != null) {
+            diskHits.incrementAndGet();
+            register(key, entry);
+        } else {
+            misses.incrementAndGet();
+            return false;
+        }
+
+        for (var output : entry.outputs.entrySet()) {
+            try (OutputStream out = sink.open(output.getKey())) {
+                out.write(output.getValue());
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Wraps a sink so that the outputs written to it are also recorded, to
+     * be stored by {@link Recorder#store()} once the execution succeeded.
+     * The recorder must be closed, to release its copy.
+     */
+    public Recorder record(String key, String transformation, OutputSink sink) {
+        return new Recorder(key, transformation, sink);
+    }
+
+    /**
+     * Drops the entries of a transformation, when it is replaced.
+     */
+    public void invalidate(String transformation) {
+        synchronized (this) {
+            Iterator<Entry> it = entries.values().iterator();
+            while (it.hasNext()) {
+                Entry entry = it.next();
+                if (entry.transformation.equals(transformation)) {
+                    usedBytes -= entry.size;
+                    it.remove();
+                }
+            }
+        }
+        if (directory != null) {
+            Path folder = directory.resolve(folderName(transformation));
+            try (Stream<Path> files = Files.walk(folder)) {
+                for (Path file : files.sorted(Comparator.reverseOrder()).toList()) {
+                    Files.deleteIfExists(file);
+                }
+            } catch (NoSuchFileException e) {
+                // nothing cached on disk
+            } catch (IOException e) {
+                Log.error("Cannot invalidate cached results of " + transformation + ": " + e.getMessage());
+            }
+        }
+    }
+
+    public synchronized Map<String, Object> getStats() {
+        Map<String, Object> stats = new LinkedHashMap<>();
+        long lookups = hits.get() + diskHits.get() + misses.get();
+        stats.put("entries", entries.size());
+        stats.put("bytes", usedBytes);
+        stats.put("budgetBytes", budget);
+        stats.put("hits", hits.get());
+        stats.put("diskHits", diskHits.get());
+        stats.put("misses", misses.get());
+        stats.put("evictions", evictions.get());
+        stats.put("recordingBytes", recordingBytes.get());
+        stats.put("skippedRecordings", skippedRecordings.get());
+        stats.put("hitRate", lookups == 0 ? 0.0 : (double) (hits.get() + diskHits.get()) / lookups);
+        return stats;
+    }
+
+    public class Recorder implements OutputSink, AutoCloseable {
+        private final String key;
+        private final String transformation;
+        private final OutputSink sink;
+        private final Map<String, ByteArrayOutputStream> outputs = new LinkedHashMap<>();
+        private long size;
+        private boolean overflowed;
+
+        private Recorder(String key, String transformation, OutputSink sink) {
+            this.key = key;
+            this.transformation = transformation;
+            this.sink = sink;
+        }
+
+        @Override
+        public OutputStream open(String name) throws IOException {
+            OutputStream target = sink.open(name);
+            ByteArrayOutputStream copy = new ByteArrayOutputStream();
+            outputs.put(name, copy);
+            return new OutputStream() {
+                @Override
+                public void write(int b) throws IOException {
+                    target.write(b);
+                    capture(copy, new byte[] {(byte) b}, 0, 1);
+                }
+
+                @Override
+                public void write(byte[] b, int off, int len) throws IOException {
+                    target.write(b, off, len);
+                    capture(copy, b, off, len);
+                }
+
+                @Override
+                public void flush() throws IOException {
+                    target.flush();
+                }
+
+                @Override
+                public void close() throws IOException {
+                    target.close();
+                }
+            };
+        }
+
+        /**
+         * Stores the recorded outputs, unless they were too large to be cached.
+         */
+        public void store() {
+            if (overflowed) return;
+            Map<String, byte[]> content = new LinkedHashMap<>();
+            for (var output : outputs.entrySet()) {
+                content.put(output.getKey(), output.getValue().toByteArray());
+            }
+            Entry entry = new Entry(transformation, content, size);
+            close();
+            register(key, entry);
+            writeToDisk(key, entry);
+        }
+
+        /**
+         * Releases the recorded outputs, stored or not.
+         */
+        @Override
+        public void close() {
+            recordingBytes.addAndGet(-size);
+            size = 0;
+            outputs.clear();
+        }
+
+        private void capture(ByteArrayOutputStream copy, byte[] b, int off, int len) {
+            if (overflowed) return;
+            if (size + len > maxEntrySize || !reserve(len)) {
+                overflowed = true;
+                skippedRecordings.incrementAndGet();
+                close();
+                return;
+            }
+            size += len;
+            copy.write(b, off, len);
+        }
+    }
+
+    // Takes room for bytes being recorded, if the recordings stay within the budget
+    private boolean reserve(long len) {
+        if (recordingBytes.addAndGet(len) <= budget) return true;
+        recordingBytes.addAndGet(-len);
+        return false;
+    }
+
+    private synchronized void register(String key, Entry entry) {
+        Entry previous = entries.put(key, entry);
+        if (previous != null) {
+            usedBytes -= previous.size;
+        }
+        usedBytes += entry.size;
+
+        Iterator<Entry> it = entries.values().iterator();
+        while (usedBytes > budget && it.hasNext()) {
+            Entry eldest = it.next();
+            if (eldest == entry) continue;
+            usedBytes -= eldest.size;
+            it.remove();
+            evictions.incrementAndGet();
+        }
+    }
+
+    private Entry readFromDisk(String key, String transformation) {
+        if (directory == null) return null;
+        Path file = directory.resolve(folderName(transformation)).resolve(key);
+        try (DataInputStream in = new DataInputStream(Files.newInputStream(file))) {
+            int count = in.readInt();
+            Map<String, byte[]> outputs = new LinkedHashMap<>();
+            long size = 0;
+            for (int i = 0; i < count; i++) {
+                String name = in.readUTF();
+                byte[] content = in.readNBytes(in.readInt());
+                outputs.put(name, content);
+                size += content.length;
+            }
+            return new Entry(transformation, outputs, size);
+        } catch (NoSuchFileException e) {
+            return null;
+        } catch (IOException e) {
+            Log.error("Cannot read cached result " + file + ": " + e.getMessage());
+            return null;
+        }
+    }
+
+    private void writeToDisk(String key, Entry entry) {
+        if (directory == null) return;
+        Path folder = directory.resolve(folderName(entry.transformation));
+        try {
+            Files.createDirectories(folder);
+            // written aside then moved, a concurrent reader never sees a partial entry
+            Path temp = Files.createTempFile(folder, key, ".tmp");
+            try (DataOutputStream out = new DataOutputStream(Files.newOutputStream(temp))) {
+                out.writeInt(entry.outputs.size());
+                for (var output : entry.outputs.entrySet()) {
+                    out.writeUTF(output.getKey());
+                    out.writeInt(output.getValue().length);
+                    out.write(output.getValue());
+                }
+            }
+            Files.move(temp, folder.resolve(key), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } catch (IOException e) {
+            Log.error("Cannot write cached result of " + entry.transformation + ": " + e.getMessage());
+        }
+    }
+
+    private static String folderName(String transformation) {
+        return transformation.replaceAll("[^A-Za-z0-9._-]", "_");
+    }
+
+    private static void update(MessageDigest digest, String value) {
+        digest.update(String.valueOf(value).getBytes(StandardCharsets.UTF_8));
+        digest.update((byte) 0);
+    }
+
+    /**
+     * Content hash of an uploaded model.
+     */
+    public static String hash(InputStream in) throws IOException {
+        MessageDigest digest = FileHashes.digest();
+        byte[] buffer = new byte[64 * 1024];
+        for (int n = in.read(buffer); n != -1; n = in.read(buffer)) {
+            digest.update(buffer, 0, n);
+        }
+        return HexFormat.of().formatHex(digest.digest());
+    }
+}
@@ -0,0 +1,266 @@
+package fr.imta.naomod.atl.runners;
+
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+import fr.imta.naomod.atl.Config;
+import fr.imta.naomod.atl.Log;
+
+/**
+ * What a cold start would otherwise compute again, kept in a single file
+ * between runs: the catalog, the compiled EMFTVM and ASM modules, and the
+ * metamodels in the binary format of EMF. Enabled by setting
+ * ATL_SNAPSHOT_FILE.
+ *
+ * Each entry derives from a source file (or directory) and records its
+ * modification time, size and SHA-256. An entry is only used while its source
+ * has the same time and size, or the same content; a stale entry is dropped
+ * and rebuilt by its cache on demand.
+ *
+ * The file is memory-mapped when the server starts, entries being paged in
+ * as they are used. It is written again, aside and then moved over the
+ * previous one, by {@link #save()} once the warmup is over and when the
+ * server stops. A file of another format version is ignored.
+ */
+public class SnapshotStore {
+    private static final int MAGIC = 0x41544c53; // "ATLS"
+    private static final int VERSION = 1;
+
+    private static final SnapshotStore instance = fromConfig();
+
+    public enum Kind { CATALOG, EMFTVM_MODULE, ASM_MODULE, METAMODEL }
+
+    // hash is null for a directory
+    private record Stamp(long lastModified, long size, String hash) {}
+
+    // in the mapped file, or added since it was mapped
+    private record Entry(Stamp stamp, int offset, int length, byte[] content) {}
+
+    private final Path file;
+    private MappedByteBuffer mapped;
+    private final Map<String, Entry> entries = new ConcurrentHashMap<>();
+    private volatile boolean dirty;
+
+    private final AtomicLong hits = new AtomicLong();
+    private final AtomicLong misses = new AtomicLong();
+    private final AtomicLong stale = new AtomicLong();
+
+    SnapshotStore(Path file) {
+        this.file = file;
+        if (file != null) {
+            open();
+        }
+    }
+
+    private static SnapshotStore fromConfig() {
+        String file = Config.getString("ATL_SNAPSHOT_FILE", null);
+        return new SnapshotStore(file != null ? Path.of(file).toAbsolutePath() : null);
+    }
+
+    public static SnapshotStore getInstance() {
+        return instance;
+    }
+
+    public boolean isEnabled() {
+        return file != null;
+    }
+
+    /**
+     * The content stored for a source, or null if there is none or the source
+     * changed since it was stored.
+     */
+    public byte[] get(Kind kind, Path source) throws IOException {
+        if (file == null) return null;
+        String key = key(kind, source);
+        Entry entry = entries.get(key);
+        if (entry == null) {
+            misses.incrementAndGet();
+            return null;
+        }
+        boolean current;
+        try {
+            BasicFileAttributes attributes = Files.readAttributes(source, BasicFileAttributes.class);
+            current = entry.stamp.lastModified == attributes.lastModifiedTime().toMillis()
+                    && entry.stamp.size == attributes.size()
+                || entry.stamp.hash != null && entry.stamp.hash.equals(FileHashes.sha256(source));
+        } catch (NoSuchFileException e) {
+            current = false;
+        }
+        if (!current) {
+            stale.incrementAndGet();
+            entries.remove(key, entry);
+            dirty = true;
+            return null;
+        }
+
+        hits.incrementAndGet();
+        if (entry.content != null) return entry.content;
+        byte[] content = new byte[entry.length];
+        mapped.get(entry.offset, content);
+        return content;
+    }
+
+    /**
+     * Stores content derived from the current version of a source.
+     */
+    public void put(Kind kind, Path source, byte[] content) {
+        if (file == null) return;
+        try {
+            Stamp stamp = stamp(source, !Files.isDirectory(source));
+            entries.put(key(kind, source), new Entry(stamp, 0, content.length, content));
+            dirty = true;
+        } catch (IOException e) {
+            // the source is gone, nothing worth keeping
+        }
+    }
+
+    /**
+     * Writes the file if entries were added or dropped since it was read.
+     */
+    public synchronized void save() {
+        if (file == null || !dirty) return;
+        dirty = false;
+        List<Map.Entry<String, Entry>> snapshot = new ArrayList<>(entries.entrySet());
+        Path temp = null;
+        try {
+            Files.createDirectories(file.getParent());
+            temp = Files.createTempFile(file.getParent(), file.getFileName().toString(), ".tmp");
+            try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(temp)))) {
+                out.writeInt(MAGIC);
+                out.writeInt(VERSION);
+                out.writeInt(snapshot.size());
+                for (var entry : snapshot) {
+                    writeString(out, entry.getKey());
+                    out.writeLong(entry.getValue().stamp.lastModified);
+                    out.writeLong(entry.getValue().stamp.size);
+                    writeString(out, entry.getValue().stamp.hash != null ? entry.getValue().stamp.hash : "");
+                    out.writeInt(entry.getValue().length);
+                }
+                byte[] buffer = new byte[64 * 1024];
+                for (var entry : snapshot) {
+                    Entry value = entry.getValue();
+                    if (value.content != null) {
+                        out.write(value.content);
+                        continue;
+                    }
+                    for (int done = 0; done < value.length; done += buffer.length) {
+                        int length = Math.min(buffer.length, value.length - done);
+                        mapped.get(value.offset + done, buffer, 0, length);
+                        out.write(buffer, 0, length);
+                    }
+                }
+            }
+            // the previous file stays mapped until the process ends, replacing it does not change the mapping
+            Files.move(temp, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+            Log.info("Saved snapshot of " + snapshot.size() + " entries to " + file);
+        } catch (IOException e) {
+            dirty = true;
+            Log.error("Cannot save snapshot " + file + ": " + e.getMessage());
+            try {
+                if (temp != null) Files.deleteIfExists(temp);
+            } catch (IOException ignored) {
+                // nothing else to do
+            }
+        }
+    }
+
+    public Map<String, Object> getStats() {
+        Map<String, Object> stats = new LinkedHashMap<>();
+        stats.put("enabled", file != null);
+        stats.put("entries", entries.size());
+        stats.put("hits", hits.get());
+        stats.put("misses", misses.get());
+        stats.put("stale", stale.get());
+        return stats;
+    }
+
+    private void open() {
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+            if (buffer.getInt() != MAGIC || buffer.getInt() != VERSION) {
+                Log.error("Ignoring snapshot " + file + ", written by another version");
+                return;
+            }
+            int count = buffer.getInt();
+            List<String> keys = new ArrayList<>();
+            List<Stamp> stamps = new ArrayList<>();
+            List<Integer> lengths = new ArrayList<>();
+            for (int i = 0; i < count; i++) {
+                keys.add(readString(buffer));
+                long lastModified = buffer.getLong();
+                long size = buffer.getLong();
+                String hash = readString(buffer);
+                stamps.add(new Stamp(lastModified, size, hash.isEmpty() ? null : hash));
+                lengths.add(buffer.getInt());
+            }
+            long end = buffer.position();
+            for (int length : lengths) {
+                end += length;
+            }
+            if (end > buffer.limit()) {
+                throw new IOException("truncated");
+            }
+
+            int offset = buffer.position();
+            for (int i = 0; i < count; i++) {
+                entries.put(keys.get(i), new Entry(stamps.get(i), offset, lengths.get(i), null));
+                // a source that did not change is not hashed again
+                if (stamps.get(i).hash != null) {
+                    FileHashes.seed(source(keys.get(i)), stamps.get(i).lastModified, stamps.get(i).size,
+                        stamps.get(i).hash);
+                }
+                offset += lengths.get(i);
+            }
+            mapped = buffer;
+            Log.info("Mapped snapshot of " + count + " entries from " + file);
+        } catch (NoSuchFileException e) {
+            // first run
+        } catch (IOException | RuntimeException e) {
+            entries.clear();
+            Log.error("Ignoring unreadable snapshot " + file + ": " + e.getMessage());
+        }
+    }
+
+    private static Stamp stamp(Path source, boolean hashed) throws IOException {
+        BasicFileAttributes attributes = Files.readAttributes(source, BasicFileAttributes.class);
+        return new Stamp(attributes.lastModifiedTime().toMillis(), attributes.size(),
+            hashed ? FileHashes.sha256(source) : null);
+    }
+
+    private static String key(Kind kind, Path source) {
+        return kind.name() + ":" + source.toAbsolutePath().normalize();
+    }
+
+    private static Path source(String key) {
+        return Path.of(key.substring(key.indexOf(':') + 1));
+    }
+
+    private static void writeString(DataOutputStream out, String value) throws IOException {
+        byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+        out.writeInt(bytes.length);
+        out.write(bytes);
+    }
+
+    private static String readString(ByteBuffer buffer) {
+        byte[] bytes = new byte[buffer.getInt()];
+        buffer.get(bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+}
@@ -0,0 +1,78 @@
+package fr.imta.naomod.atl.runners;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.Collections;
+import java.util.Map;
+
+import org.eclipse.emf.ecore.resource.Resource;
+import org.eclipse.emf.ecore.resource.ResourceSet;
+
+import fr.imta.naomod.atl.Metrics;
+import fr.imta.naomod.atl.Transformation;
+
+/**
+ * Output models of an execution. They stay in memory until the result is
+ * closed, which disposes the whole execution.
+ */
+public class TransformationResult implements AutoCloseable {
+    private final ATLRunner runner;
+    private final Transformation transformation;
+    private final ResourceSet resourceSet;
+    private final Map<String, Resource> outputs;
+    private final long runNanos;
+
+    TransformationResult(ATLRunner runner, Transformation transformation, ResourceSet resourceSet,
+            Map<String, Resource> outputs, long runNanos) {
+        this.runner = runner;
+        this.transformation = transformation;
+        this.resourceSet = resourceSet;
+        this.outputs = outputs;
+        this.runNanos = runNanos;
+    }
+
+    /**
+     * Time spent running the transformation itself, without loading the
+     * inputs nor saving the outputs, in nanoseconds.
+     */
+    public long getRunNanos() {
+        return runNanos;
+    }
+
+    /**
+     * Output resources by output model name, in the order of the output
+     * metamodels. A resource is null when nothing was generated.
+     */
+    public Map<String, Resource> getOutputs() {
+        return Collections.unmodifiableMap(outputs);
+    }
+
+    /**
+     * Writes each output model to the sink as XMI.
+     */
+    public void save(OutputSink sink) throws IOException {
+        save(sink, ModelFormat.XMI);
+    }
+
+    /**
+     * Writes each output model to the sink in the given format.
+     */
+    public void save(OutputSink sink, ModelFormat format) throws IOException {
+        long start = System.nanoTime();
+        try (Metrics.Scope scope = Metrics.getInstance().enter(transformation)) {
+            for (var out : outputs.entrySet()) {
+                try (OutputStream stream = sink.open(out.getKey())) {
+                    if (out.getValue() != null) {
+                        format.save(out.getValue(), stream);
+                    }
+                }
+            }
+            Metrics.getInstance().record(Metrics.Phase.OUTPUT_SAVE, System.nanoTime() - start);
+        }
+    }
+
+    @Override
+    public void close() {
+        runner.dispose(resourceSet);
+    }
+}
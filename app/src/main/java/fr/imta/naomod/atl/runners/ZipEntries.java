@@ -0,0 +1,143 @@
+package fr.imta.naomod.atl.runners;
+
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * The models stored in a zip archive, listed from its central directory
+ * without inflating anything. Each model is then read from the offset of its
+ * entry, so that reading n entries reads the archive once, and entries with
+ * the same name stay apart.
+ */
+public final class ZipEntries {
+    private static final int END_SIGNATURE = 0x06054b50;
+    private static final int END_LENGTH = 22;
+    private static final int ZIP64_LOCATOR_SIGNATURE = 0x07064b50;
+    private static final int ZIP64_LOCATOR_LENGTH = 20;
+    private static final int ZIP64_END_SIGNATURE = 0x06064b50;
+    private static final int ZIP64_END_LENGTH = 56;
+    private static final int ZIP64_EXTRA = 0x0001;
+    private static final int HEADER_SIGNATURE = 0x02014b50;
+    private static final int HEADER_LENGTH = 46;
+    private static final long UNSET = 0xFFFFFFFFL;
+
+    /**
+     * A file of the archive, in the order of the archive.
+     */
+    public record Entry(String name, ModelInput input) {}
+
+    private ZipEntries() {}
+
+    /**
+     * Lists the files of an archive, directories left out.
+     *
+     * @param size size of the archive in bytes
+     */
+    public static List<Entry> list(ModelInput.Content zip, long size) throws IOException {
+        // the end record is last, after a comment of at most 64 KB
+        int tailLength = (int) Math.min(size, END_LENGTH + 0xFFFF);
+        ByteBuffer tail = read(zip, size - tailLength, tailLength);
+        int end = tailLength - END_LENGTH;
+        while (end >= 0 && tail.getInt(end) != END_SIGNATURE) {
+            end--;
+        }
+        if (end < 0) {
+            throw new IOException("Not a zip archive");
+        }
+        long count = Short.toUnsignedLong(tail.getShort(end + 10));
+        long directorySize = Integer.toUnsignedLong(tail.getInt(end + 12));
+        long directoryOffset = Integer.toUnsignedLong(tail.getInt(end + 16));
+
+        int locator = end - ZIP64_LOCATOR_LENGTH;
+        if (locator >= 0 && tail.getInt(locator) == ZIP64_LOCATOR_SIGNATURE) {
+            ByteBuffer zip64End = read(zip, tail.getLong(locator + 8), ZIP64_END_LENGTH);
+            if (zip64End.getInt(0) != ZIP64_END_SIGNATURE) {
+                throw new IOException("Invalid zip64 archive");
+            }
+            count = zip64End.getLong(32);
+            directorySize = zip64End.getLong(40);
+            directoryOffset = zip64End.getLong(48);
+        }
+        if (directorySize > Integer.MAX_VALUE) {
+            throw new IOException("Zip central directory too large");
+        }
+
+        ByteBuffer directory = read(zip, directoryOffset, (int) directorySize);
+        List<Entry> entries = new ArrayList<>();
+        int position = 0;
+        for (long i = 0; i < count; i++) {
+            if (position + HEADER_LENGTH > directory.limit() || directory.getInt(position) != HEADER_SIGNATURE) {
+                throw new IOException("Invalid zip central directory");
+            }
+            long compressedSize = Integer.toUnsignedLong(directory.getInt(position + 20));
+            long uncompressedSize = Integer.toUnsignedLong(directory.getInt(position + 24));
+            int nameLength = Short.toUnsignedInt(directory.getShort(position + 28));
+            int extraLength = Short.toUnsignedInt(directory.getShort(position + 30));
+            int commentLength = Short.toUnsignedInt(directory.getShort(position + 32));
+            long offset = Integer.toUnsignedLong(directory.getInt(position + 42));
+
+            byte[] nameBytes = new byte[nameLength];
+            directory.get(position + HEADER_LENGTH, nameBytes);
+            String name = new String(nameBytes, StandardCharsets.UTF_8);
+            if (offset == UNSET) {
+                offset = zip64Offset(directory, position + HEADER_LENGTH + nameLength, extraLength,
+                    uncompressedSize == UNSET, compressedSize == UNSET);
+            }
+            if (!name.endsWith("/")) {
+                entries.add(new Entry(name, ModelInput.zipEntry(zip, offset, name)));
+            }
+            position += HEADER_LENGTH + nameLength + extraLength + commentLength;
+        }
+        return entries;
+    }
+
+    /**
+     * Opens the archive at the local header of an entry.
+     */
+    static InputStream open(ModelInput.Content zip, long offset) throws IOException {
+        InputStream in = zip.open();
+        try {
+            // a seek for files and buffers
+            in.skipNBytes(offset);
+        } catch (IOException | RuntimeException e) {
+            in.close();
+            throw e;
+        }
+        return in;
+    }
+
+    // the offset of an entry from its zip64 extra field, which has the sizes first when they are unset too
+    private static long zip64Offset(ByteBuffer directory, int extra, int extraLength,
+            boolean uncompressedSizeUnset, boolean compressedSizeUnset) throws IOException {
+        int position = extra;
+        while (position + 4 <= extra + extraLength) {
+            int id = Short.toUnsignedInt(directory.getShort(position));
+            int length = Short.toUnsignedInt(directory.getShort(position + 2));
+            if (id == ZIP64_EXTRA) {
+                int field = position + 4;
+                if (uncompressedSizeUnset) field += 8;
+                if (compressedSizeUnset) field += 8;
+                if (field + 8 > position + 4 + length) break;
+                return directory.getLong(field);
+            }
+            position += 4 + length;
+        }
+        throw new IOException("Invalid zip64 entry");
+    }
+
+    private static ByteBuffer read(ModelInput.Content zip, long offset, int length) throws IOException {
+        byte[] bytes = new byte[length];
+        try (InputStream in = open(zip, offset)) {
+            if (in.readNBytes(bytes, 0, length) != length) {
+                throw new EOFException("Truncated zip archive");
+            }
+        }
+        return ByteBuffer.wrap(bytes).order(ByteOrder.LITTLE_ENDIAN);
+    }
+}
@@ -0,0 +1,197 @@
+package fr.imta.naomod.atl;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertInstanceOf;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import fr.imta.naomod.atl.runners.FakeRunner;
+import fr.imta.naomod.atl.runners.TransformationResult;
+import io.vertx.core.Vertx;
+
+class BatchExecutionTest {
+    private Vertx vertx;
+    private ExecutionService executionService;
+    private final FakeRunner runner = new FakeRunner();
+    private final Recorder recorder = new Recorder();
+
+    @BeforeEach
+    void setUp() {
+        vertx = Vertx.vertx();
+        executionService = new ExecutionService(vertx, 2, 2, 0);
+    }
+
+    @AfterEach
+    void tearDown() {
+        vertx.close();
+    }
+
+    @Test
+    void reportsEachModelOnce() throws Exception {
+        Throwable error = run(new BatchExecution(vertx, executionService, 0), 10, index -> {
+            if (index == 3) throw new IllegalStateException("bad model");
+            return runner.result();
+        });
+
+        assertEquals(null, error);
+        assertEquals(9, recorder.completed.size());
+        assertEquals(List.of(3), recorder.failed);
+        assertEquals(0, runner.getOpen());
+    }
+
+    @Test
+    void dropsOutputsOfTimedOutModels() throws Exception {
+        CountDownLatch reported = new CountDownLatch(1);
+        recorder.onFailure = reported::countDown;
+
+        Throwable error = run(new BatchExecution(vertx, executionService, 50), 2, index -> {
+            if (index == 1) {
+                // like ATL, the task does not stop when interrupted, and only returns once the timeout was reported
+                awaitUninterruptibly(reported);
+            }
+            return runner.result();
+        });
+
+        assertEquals(null, error);
+        awaitNoOpenResult();
+        assertEquals(List.of(0), recorder.completed);
+        assertEquals(List.of(1), recorder.failed);
+        assertInstanceOf(TimeoutException.class, recorder.errors.get(0));
+    }
+
+    @Test
+    void runsStepsInOrderAndReleasesIntermediateOutputs() throws Exception {
+        List<String> steps = Collections.synchronizedList(new ArrayList<>());
+        BatchExecution execution = new BatchExecution(vertx, executionService, 0);
+
+        CompletableFuture<Throwable> done = new CompletableFuture<>();
+        vertx.runOnContext(v -> execution.run(6, 3, (index, step, previous) -> {
+                assertEquals(step == 0, previous == null);
+                if (previous != null) previous.close();
+                steps.add(index + ":" + step);
+                return runner.result();
+            }, recorder)
+            .onComplete(ar -> done.complete(ar.cause())));
+
+        assertEquals(null, done.get(10, TimeUnit.SECONDS));
+        assertEquals(6, recorder.completed.size());
+        assertEquals(18, steps.size());
+        for (int index = 0; index < 6; index++) {
+            assertTrue(steps.indexOf(index + ":0") < steps.indexOf(index + ":1"));
+            assertTrue(steps.indexOf(index + ":1") < steps.indexOf(index + ":2"));
+        }
+        assertEquals(0, runner.getOpen());
+    }
+
+    @Test
+    void timeoutCoversAllSteps() throws Exception {
+        BatchExecution execution = new BatchExecution(vertx, executionService, 200);
+
+        // each step is within the timeout, the three of them are not
+        CompletableFuture<Throwable> done = new CompletableFuture<>();
+        vertx.runOnContext(v -> execution.run(2, 3, (index, step, previous) -> {
+                if (previous != null) previous.close();
+                TransformationResult result = runner.result();
+                try {
+                    Thread.sleep(80);
+                } catch (InterruptedException e) {
+                    result.close();
+                    throw e;
+                }
+                return result;
+            }, recorder)
+            .onComplete(ar -> done.complete(ar.cause())));
+
+        assertEquals(null, done.get(10, TimeUnit.SECONDS));
+        awaitNoOpenResult();
+        assertEquals(List.of(), recorder.completed);
+        assertEquals(2, recorder.failed.size());
+        assertInstanceOf(TimeoutException.class, recorder.errors.get(0));
+    }
+
+    @Test
+    void cancelReleasesOutputs() throws Exception {
+        CountDownLatch started = new CountDownLatch(2);
+        CountDownLatch release = new CountDownLatch(1);
+        BatchExecution execution = new BatchExecution(vertx, executionService, 0);
+
+        CompletableFuture<Throwable> done = start(execution, 5, index -> {
+            started.countDown();
+            awaitUninterruptibly(release);
+            return runner.result();
+        });
+        assertTrue(started.await(10, TimeUnit.SECONDS));
+        vertx.runOnContext(v -> execution.cancel());
+
+        assertInstanceOf(CancellationException.class, done.get(10, TimeUnit.SECONDS));
+        release.countDown();
+        awaitNoOpenResult();
+        assertEquals(List.of(), recorder.completed);
+    }
+
+    private Throwable run(BatchExecution execution, int count, BatchExecution.Task task) throws Exception {
+        return start(execution, count, task).get(10, TimeUnit.SECONDS);
+    }
+
+    // Runs the batch from a Vert.x context, the future giving its failure or null
+    private CompletableFuture<Throwable> start(BatchExecution execution, int count, BatchExecution.Task task) {
+        CompletableFuture<Throwable> done = new CompletableFuture<>();
+        vertx.runOnContext(v -> execution.run(count, task, recorder)
+            .onComplete(ar -> done.complete(ar.cause())));
+        return done;
+    }
+
+    private void awaitNoOpenResult() throws InterruptedException {
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(10);
+        while (runner.getOpen() != 0 && System.nanoTime() < deadline) {
+            Thread.sleep(10);
+        }
+        assertEquals(0, runner.getOpen());
+    }
+
+    private static void awaitUninterruptibly(CountDownLatch latch) {
+        boolean interrupted = false;
+        while (true) {
+            try {
+                latch.await();
+                break;
+            } catch (InterruptedException e) {
+                interrupted = true;
+            }
+        }
+        if (interrupted) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private static class Recorder implements BatchExecution.Listener {
+        final List<Integer> completed = Collections.synchronizedList(new ArrayList<>());
+        final List<Integer> failed = Collections.synchronizedList(new ArrayList<>());
+        final List<Throwable> errors = Collections.synchronizedList(new ArrayList<>());
+        Runnable onFailure = () -> {};
+
+        @Override
+        public void completed(int index, TransformationResult result) {
+            completed.add(index);
+        }
+
+        @Override
+        public void failed(int index, Throwable error) {
+            failed.add(index);
+            errors.add(error);
+            onFailure.run();
+        }
+    }
+}
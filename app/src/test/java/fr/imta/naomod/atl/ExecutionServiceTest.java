@@ -0,0 +1,111 @@
+package fr.imta.naomod.atl;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertInstanceOf;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import io.vertx.core.Future;
+import io.vertx.core.Vertx;
+
+class ExecutionServiceTest {
+    private Vertx vertx;
+    private final CountDownLatch release = new CountDownLatch(1);
+
+    @BeforeEach
+    void setUp() {
+        vertx = Vertx.vertx();
+    }
+
+    @AfterEach
+    void tearDown() {
+        release.countDown();
+        vertx.close();
+    }
+
+    @Test
+    void rejectsInvalidSizes() {
+        assertThrows(IllegalArgumentException.class, () -> new ExecutionService(vertx, 0, 1, 0));
+        assertThrows(IllegalArgumentException.class, () -> new ExecutionService(vertx, 1, -1, 0));
+    }
+
+    @Test
+    void withoutQueueOnlyAcceptsIdleWorkers() throws Exception {
+        ExecutionService service = new ExecutionService(vertx, 1, 0, 0);
+        service.submit(this::block, 0);
+
+        assertInstanceOf(RejectedExecutionException.class, failure(service.submit(() -> "next", 0).future()));
+        release.countDown();
+        awaitInFlight(service, 0);
+        assertEquals("next", await(service.submit(() -> "next", 0).future()));
+    }
+
+    @Test
+    void timedOutJobKeepsItsSlotUntilItReturns() throws Exception {
+        ExecutionService service = new ExecutionService(vertx, 1, 1, 0);
+
+        // like ATL, the task does not stop when interrupted
+        assertInstanceOf(TimeoutException.class, failure(service.submit(this::block, 50).future()));
+        assertEquals(1, service.getInFlightCount());
+
+        service.submit(() -> "queued", 0);
+        assertInstanceOf(RejectedExecutionException.class, failure(service.submit(() -> "next", 0).future()));
+
+        release.countDown();
+        awaitInFlight(service, 0);
+    }
+
+    @Test
+    void cancelledQueuedJobFreesItsSlot() throws Exception {
+        ExecutionService service = new ExecutionService(vertx, 1, 1, 0);
+        service.submit(this::block, 0);
+        ExecutionService.Job<String> queued = service.submit(() -> "queued", 0);
+        assertEquals(2, service.getInFlightCount());
+
+        queued.cancel();
+        assertInstanceOf(CancellationException.class, failure(queued.future()));
+        assertEquals(1, service.getInFlightCount());
+    }
+
+    private String block() {
+        boolean interrupted = false;
+        while (true) {
+            try {
+                release.await();
+                break;
+            } catch (InterruptedException e) {
+                interrupted = true;
+            }
+        }
+        if (interrupted) {
+            Thread.currentThread().interrupt();
+        }
+        return "done";
+    }
+
+    private static <T> T await(Future<T> future) throws Exception {
+        return future.toCompletionStage().toCompletableFuture().get(10, TimeUnit.SECONDS);
+    }
+
+    private static Throwable failure(Future<?> future) throws Exception {
+        return future.toCompletionStage().handle((result, error) -> error)
+            .toCompletableFuture().get(10, TimeUnit.SECONDS);
+    }
+
+    private static void awaitInFlight(ExecutionService service, int expected) throws InterruptedException {
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(10);
+        while (service.getInFlightCount() != expected && System.nanoTime() < deadline) {
+            Thread.sleep(10);
+        }
+        assertEquals(expected, service.getInFlightCount());
+    }
+}
@@ -0,0 +1,50 @@
+package fr.imta.naomod.atl;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+import java.util.function.ToDoubleFunction;
+
+import org.junit.jupiter.api.Test;
+
+class ExecutionTimesTest {
+    private final ExecutionTimes times = new ExecutionTimes();
+
+    @Test
+    void followsRecentExecutions() {
+        times.record("A", 10_000_000);
+        assertEquals(10, times.estimates().applyAsDouble("A"), 1e-9);
+
+        times.record("A", 20_000_000);
+        assertEquals(12, times.estimates().applyAsDouble("A"), 1e-9);
+    }
+
+    @Test
+    void unknownTransformationsTakeTheAverageTime() {
+        assertEquals(1, times.estimates().applyAsDouble("A"), 1e-9);
+
+        times.record("A", 10_000_000);
+        times.record("B", 30_000_000);
+        ToDoubleFunction<String> estimates = times.estimates();
+        assertEquals(20, estimates.applyAsDouble("C"), 1e-9);
+
+        times.forget("B");
+        assertEquals(10, times.estimates().applyAsDouble("B"), 1e-9);
+    }
+
+    @Test
+    void scopesCountOnlyTheirRunPhase() {
+        Metrics metrics = Metrics.getInstance();
+        Transformation transformation = new Transformation();
+        try (Metrics.Scope scope = metrics.enter(transformation)) {
+            metrics.record(Metrics.Phase.UPLOAD_PARSE, 5_000);
+            metrics.record(Metrics.Phase.RUN, 1_000);
+            try (Metrics.Scope nested = metrics.enter(transformation)) {
+                metrics.record(Metrics.Phase.RUN, 2_000);
+                assertEquals(2_000, nested.getRunNanos());
+            }
+            metrics.record(Metrics.Phase.RUN, 3_000);
+            metrics.record(Metrics.Phase.OUTPUT_SAVE, 5_000);
+            assertEquals(4_000, scope.getRunNanos());
+        }
+    }
+}
@@ -0,0 +1,99 @@
+package fr.imta.naomod.atl;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+class MetamodelIndexTest {
+    @TempDir
+    Path directory;
+
+    private final MetamodelIndex index = new MetamodelIndex();
+
+    @BeforeEach
+    void writeMetamodels() throws IOException {
+        Files.writeString(directory.resolve("Class.ecore"),
+            "<ecore:EPackage name=\"Class\" nsURI=\"http://example.org/Class\"/>");
+        Files.writeString(directory.resolve("Relational.ecore"),
+            "<ecore:EPackage name=\"Relational\" nsURI=\"http://example.org/Relational\"/>");
+    }
+
+    @Test
+    void findsMetamodelsByPathFileNameNameAndNsUri() {
+        add("Class2Relational", "Class.ecore", "Relational.ecore");
+
+        for (String query : List.of("Class.ecore", "class", "HTTP://EXAMPLE.ORG/CLASS")) {
+            assertEquals(Set.of("Class2Relational"), index.findByInput(query));
+        }
+        assertEquals(Set.of("Class2Relational"), index.findByOutput("relational"));
+        assertEquals(Set.of(), index.findByOutput("class"));
+    }
+
+    @Test
+    void fallsBackToPartialMatches() {
+        add("Class2Relational", "Class.ecore", "Relational.ecore");
+        add("Relational2Class", "Relational.ecore", "Class.ecore");
+
+        assertEquals(Set.of("Class2Relational", "Relational2Class"), index.findByInput("example.org"));
+        assertEquals(Set.of("Relational2Class"), index.findByInput("relat"));
+    }
+
+    @Test
+    void exactKeysDoNotHidePartialMatches() throws IOException {
+        Files.writeString(directory.resolve("SubClass.ecore"), "<ecore:EPackage name=\"SubClass\"/>");
+        Files.writeString(directory.resolve("ClassDiagram.ecore"), "<ecore:EPackage name=\"ClassDiagram\"/>");
+        add("Class2Relational", "Class.ecore", "Relational.ecore");
+        add("SubClass2Relational", "SubClass.ecore", "Relational.ecore");
+        add("ClassDiagram2Relational", "ClassDiagram.ecore", "Relational.ecore");
+
+        Set<String> found = index.findByInput("class");
+        assertEquals(Set.of("Class2Relational", "SubClass2Relational", "ClassDiagram2Relational"), found);
+        assertEquals("Class2Relational", found.iterator().next());
+        assertEquals(Set.of("SubClass2Relational"), index.findByInput("subclass"));
+    }
+
+    @Test
+    void copiesAreIndependent() {
+        add("Class2Relational", "Class.ecore", "Relational.ecore");
+        MetamodelIndex copy = index.copy();
+        copy.remove(transformation("Class2Relational", "Class.ecore", "Relational.ecore"));
+
+        assertEquals(Set.of(), copy.findByInput("class"));
+        assertEquals(Set.of("Class2Relational"), index.findByInput("class"));
+    }
+
+    @Test
+    void groupsTransformationsByInputMetamodel() {
+        add("Class2Relational", "Class.ecore", "Relational.ecore");
+        add("Class2Java", "Class.ecore", "Java.ecore");
+        add("Relational2Class", "Relational.ecore", "Class.ecore");
+
+        assertEquals(Map.of("Class", List.of("Class2Relational", "Class2Java")), index.groupByInput(1));
+        assertEquals(2, index.groupByInput(0).size());
+        // the cached grouping is the one of the count asked for
+        assertEquals(1, index.groupByInput(1).size());
+    }
+
+    private void add(String name, String input, String output) {
+        Transformation transformation = transformation(name, input, output);
+        index.add(transformation, MetamodelIndex.keys(transformation));
+    }
+
+    private Transformation transformation(String name, String input, String output) {
+        Transformation transformation = new Transformation();
+        transformation.name = name;
+        transformation.folderPath = directory.toString();
+        transformation.inputMetamodels.add(new NamedFile("IN", input));
+        transformation.outputMetamodels.add(new NamedFile("OUT", output));
+        return transformation;
+    }
+}
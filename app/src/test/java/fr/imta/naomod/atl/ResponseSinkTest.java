@@ -0,0 +1,75 @@
+package fr.imta.naomod.atl;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.OutputStream;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.nio.charset.StandardCharsets;
+import java.util.Optional;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import fr.imta.naomod.atl.runners.ModelFormat;
+import io.vertx.core.Vertx;
+import io.vertx.core.http.HttpServer;
+
+class ResponseSinkTest {
+    private Vertx vertx;
+    private HttpServer server;
+    private final HttpClient client = HttpClient.newHttpClient();
+
+    @BeforeEach
+    void setUp() throws Exception {
+        vertx = Vertx.vertx();
+        server = vertx.createHttpServer().requestHandler(request -> {
+            ResponseSink sink = new ResponseSink(request.response().setChunked(true), false, ModelFormat.XMI);
+            sink.setETag("\"key\"");
+            if (request.path().equals("/error")) {
+                // as Main.fail does when the transformation failed before any output
+                request.response().headers().remove("Content-Type");
+                request.response().setStatusCode(500).end("failed");
+                return;
+            }
+            vertx.<Void>executeBlocking(() -> {
+                try (OutputStream out = sink.open("OUT")) {
+                    out.write("<model/>".getBytes(StandardCharsets.UTF_8));
+                }
+                return null;
+            }).onSuccess(v -> sink.end());
+        }).listen(0).toCompletionStage().toCompletableFuture().get(10, TimeUnit.SECONDS);
+    }
+
+    @AfterEach
+    void tearDown() {
+        vertx.close();
+    }
+
+    @Test
+    void etagIsSentWithTheOutputs() throws Exception {
+        HttpResponse<String> response = get("/");
+
+        assertEquals(200, response.statusCode());
+        assertEquals("<model/>", response.body());
+        assertEquals(Optional.of("\"key\""), response.headers().firstValue("ETag"));
+    }
+
+    @Test
+    void etagIsNotSentWithErrors() throws Exception {
+        HttpResponse<String> response = get("/error");
+
+        assertEquals(500, response.statusCode());
+        assertTrue(response.headers().firstValue("ETag").isEmpty());
+    }
+
+    private HttpResponse<String> get(String path) throws Exception {
+        HttpRequest request = HttpRequest.newBuilder(URI.create("http://localhost:" + server.actualPort() + path)).build();
+        return client.send(request, HttpResponse.BodyHandlers.ofString());
+    }
+}
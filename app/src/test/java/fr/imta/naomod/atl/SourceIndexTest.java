@@ -0,0 +1,140 @@
+package fr.imta.naomod.atl;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+class SourceIndexTest {
+    @TempDir
+    Path directory;
+
+    private final SourceIndex index = new SourceIndex();
+
+    @BeforeEach
+    void addSources() throws IOException {
+        add("Class2Relational", """
+            module Class2Relational;
+            create OUT : Relational from IN : Class;
+
+            -- \u00e9, line offsets are in bytes
+            rule Class2Table {
+                from c : Class!Class
+                to t : Relational!Table (name <- c.name)
+            }
+            """);
+        add("Families2Persons", """
+            module Families2Persons;
+            create OUT : Persons from IN : Families;
+
+            helper context Families!Member def: isFemale() : Boolean = self.name = 'Mother';
+
+            rule Member2Female {
+                from s : Families!Member (s.isFemale())
+                to t : Persons!Female (fullName <- s.firstName)
+            }
+            """);
+    }
+
+    @Test
+    void findsIdentifiersAndTheirParts() {
+        List<SearchResult> results = index.search("table");
+
+        assertEquals(List.of("Class2Relational"), names(results));
+        assertEquals(5, results.get(0).line);
+        assertEquals("rule **Class2Table** {", results.get(0).matchContext);
+    }
+
+    @Test
+    void everyTermMustMatch() {
+        assertEquals(List.of("Families2Persons"), names(index.search("member female")));
+        assertEquals(List.of(), names(index.search("member table")));
+    }
+
+    @Test
+    void matchesPrefixes() {
+        assertEquals(List.of("Families2Persons"), names(index.search("fem")));
+    }
+
+    @Test
+    void declaredNamesRankFirst() {
+        add("Tables", """
+            module Tables;
+            -- a Table is mentioned here, Class2Relational declares a rule named after it
+            """);
+
+        assertEquals(List.of("Class2Relational", "Tables"), names(index.search("table")));
+    }
+
+    @Test
+    void fallsBackToTermsContainingTheQuery() throws IOException {
+        List<SearchResult> results = index.search("lational");
+        assertEquals(List.of("Class2Relational"), names(results));
+        assertEquals("module **Class2Relational**;", results.get(0).matchContext);
+
+        // every term must still match, within a term or at its start
+        assertEquals(List.of("Families2Persons"), names(index.search("amilies emb")));
+        assertEquals(List.of(), names(index.search("amilies able")));
+
+        // the sources are not read again, only the line of each result
+        Files.delete(directory.resolve("Families2Persons.atl"));
+        results = index.search("ersons");
+        assertEquals(List.of("Families2Persons"), names(results));
+        assertEquals("", results.get(0).matchContext);
+    }
+
+    @Test
+    void queriesWithoutIdentifiersFindNothing() {
+        assertEquals(List.of(), index.search("<-"));
+        assertEquals(List.of(), index.search("   "));
+    }
+
+    @Test
+    void removedSourcesAreNoLongerFound() {
+        Transformation transformation = new Transformation();
+        transformation.name = "Class2Relational";
+        index.remove(transformation);
+
+        assertEquals(List.of(), names(index.search("table")));
+        assertEquals(List.of("Families2Persons"), names(index.search("amilies")));
+    }
+
+    @Test
+    void copiesAreIndependent() {
+        SourceIndex copy = index.copy();
+        Transformation removed = new Transformation();
+        removed.name = "Class2Relational";
+        copy.remove(removed);
+        add(copy, "Tables", "module Tables; -- Table");
+
+        assertEquals(List.of("Tables"), names(copy.search("table")));
+        assertEquals(List.of("Class2Relational"), names(index.search("table")));
+    }
+
+    private void add(String name, String source) {
+        add(index, name, source);
+    }
+
+    private void add(SourceIndex index, String name, String source) {
+        try {
+            Files.writeString(directory.resolve(name + ".atl"), source);
+        } catch (IOException e) {
+            throw new IllegalStateException(e);
+        }
+        Transformation transformation = new Transformation();
+        transformation.name = name;
+        transformation.folderPath = directory.toString();
+        transformation.atlFile = name + ".atl";
+        index.add(transformation, SourceIndex.read(transformation));
+    }
+
+    private static List<String> names(List<SearchResult> results) {
+        return results.stream().map(result -> result.name).toList();
+    }
+}
@@ -0,0 +1,108 @@
+package fr.imta.naomod.atl;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+
+import java.util.List;
+import java.util.Map;
+
+import org.junit.jupiter.api.Test;
+
+class TransformationGraphTest {
+    private final TransformationGraph graph = new TransformationGraph();
+
+    @Test
+    void findsTheChainWithTheFewestSteps() {
+        add("A2B", "A", "B");
+        add("B2C", "B", "C");
+        add("C2D", "C", "D");
+        add("A2C", "A", "C");
+        graph.seal();
+
+        TransformationGraph.Chain chain = graph.find("a.ecore", "D", transformation -> 1);
+        assertEquals(List.of("A2C", "C2D"), chain.transformations());
+        assertEquals(List.of("A", "C", "D"), chain.metamodels());
+    }
+
+    @Test
+    void findsTheCheapestChain() {
+        add("A2B", "A", "B");
+        add("B2C", "B", "C");
+        add("A2C", "A", "C");
+        graph.seal();
+
+        Map<String, Double> costs = Map.of("A2B", 1.0, "B2C", 2.0, "A2C", 10.0);
+        assertEquals(List.of("A2B", "B2C"), graph.find("A", "C", costs::get).transformations());
+    }
+
+    @Test
+    void noChainBetweenUnrelatedMetamodels() {
+        add("A2B", "A", "B");
+        add("C2D", "C", "D");
+        graph.seal();
+
+        assertNull(graph.find("A", "D", transformation -> 1));
+        assertNull(graph.find("B", "A", transformation -> 1));
+        assertNull(graph.find("A", "Unknown", transformation -> 1));
+        assertEquals(List.of(), graph.find("A", "A", transformation -> 1).transformations());
+    }
+
+    @Test
+    void addedEdgesExtendTheReachableMetamodels() {
+        add("A2B", "A", "B");
+        add("C2D", "C", "D");
+        graph.seal();
+        assertNull(graph.find("A", "D", transformation -> 1));
+
+        // links what reaches B to what C reaches, without recomputing everything
+        TransformationGraph copy = graph.copy();
+        copy.add(transformation("B2C", "B", "C"));
+        copy.seal();
+
+        assertEquals(List.of("A2B", "B2C", "C2D"), copy.find("A", "D", transformation -> 1).transformations());
+        assertNull(graph.find("A", "D", transformation -> 1));
+    }
+
+    @Test
+    void removedEdgesAreNoLongerReachable() {
+        add("A2B", "A", "B");
+        add("B2C", "B", "C");
+        add("A2C", "A", "C");
+        graph.seal();
+
+        graph.remove(transformation("B2C", "B", "C"));
+        graph.seal();
+        assertEquals(List.of("A2C"), graph.find("A", "C", transformation -> 1).transformations());
+
+        graph.remove(transformation("A2C", "A", "C"));
+        graph.seal();
+        assertNull(graph.find("A", "C", transformation -> 1));
+    }
+
+    @Test
+    void onlyEnabledSingleInputTransformationsAreChained() {
+        Transformation disabled = transformation("A2B", "A", "B");
+        disabled.enabled = false;
+        graph.add(disabled);
+        Transformation twoInputs = transformation("A2C", "A", "C");
+        twoInputs.inputMetamodels.add(new NamedFile("IN2", "B.ecore"));
+        graph.add(twoInputs);
+        graph.seal();
+
+        assertNull(graph.find("A", "B", transformation -> 1));
+        assertNull(graph.find("A", "C", transformation -> 1));
+    }
+
+    private void add(String name, String from, String to) {
+        graph.add(transformation(name, from, to));
+    }
+
+    private static Transformation transformation(String name, String from, String to) {
+        Transformation transformation = new Transformation();
+        transformation.name = name;
+        transformation.enabled = true;
+        transformation.inputMetamodels.add(new NamedFile("IN", "metamodels/" + from + ".ecore"));
+        transformation.outputMetamodels.add(new NamedFile("OUT", "metamodels/" + to + ".ecore"));
+        return transformation;
+    }
+}
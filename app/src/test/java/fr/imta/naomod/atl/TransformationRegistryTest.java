@@ -0,0 +1,71 @@
+package fr.imta.naomod.atl;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertSame;
+
+import java.util.List;
+
+import org.junit.jupiter.api.Test;
+
+class TransformationRegistryTest {
+    private final TransformationRegistry registry = new TransformationRegistry();
+
+    @Test
+    void findsTransformationsByNameWhateverTheCase() {
+        Transformation transformation = transformation("Class2Relational");
+        registry.register(transformation);
+
+        assertSame(transformation, registry.getByName("class2relational"));
+        assertSame(transformation, registry.getByName("CLASS2RELATIONAL"));
+        assertSame(transformation, registry.getById(transformation.id));
+        assertNull(registry.getByName(null));
+    }
+
+    @Test
+    void replacesTransformationsDifferingOnlyByCase() {
+        registry.register(transformation("Class2Relational"));
+        Transformation replacement = transformation("class2relational");
+        registry.register(replacement);
+
+        assertEquals(1, registry.size());
+        assertSame(replacement, registry.getByName("Class2Relational"));
+    }
+
+    @Test
+    void keepsIdsAcrossRemovals() {
+        registry.registerAll(List.of(transformation("A"), transformation("B")));
+        int id = registry.getByName("A").id;
+        assertNotEquals(id, registry.getByName("B").id);
+
+        Transformation removed = registry.remove("a");
+        assertEquals("A", removed.name);
+        assertNull(registry.getById(id));
+
+        Transformation added = transformation("A");
+        registry.register(added);
+        assertEquals(id, added.id);
+        assertSame(added, registry.getById(id));
+    }
+
+    @Test
+    void replacePublishesRemovalsAndAdditionsTogether() {
+        registry.registerAll(List.of(transformation("A"), transformation("B")));
+        List<Transformation> all = registry.getAll();
+
+        List<Transformation> removed = registry.replace(List.of("A", "Missing"), List.of(transformation("C")));
+
+        assertEquals(List.of("A"), removed.stream().map(t -> t.name).toList());
+        assertEquals(List.of("B", "C"), registry.getAll().stream().map(t -> t.name).toList());
+        // readers of the previous snapshot are not affected
+        assertEquals(List.of("A", "B"), all.stream().map(t -> t.name).toList());
+    }
+
+    private static Transformation transformation(String name) {
+        Transformation transformation = new Transformation();
+        transformation.name = name;
+        transformation.folderPath = "/zoo/" + name;
+        return transformation;
+    }
+}
@@ -0,0 +1,101 @@
+package fr.imta.naomod.atl.runners;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotSame;
+import static org.junit.jupiter.api.Assertions.assertSame;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import org.junit.jupiter.api.Test;
+
+import fr.imta.naomod.atl.NamedFile;
+import fr.imta.naomod.atl.Transformation;
+
+class EnvironmentPoolTest {
+    private static class TestEnvironment implements EnvironmentPool.Environment {
+        final String key;
+        boolean current = true;
+
+        TestEnvironment(Transformation transformation) {
+            this.key = transformation.inputMetamodels.get(0).name;
+        }
+
+        @Override
+        public boolean isCurrent() {
+            return current;
+        }
+    }
+
+    private final EnvironmentPool<TestEnvironment> pool = new EnvironmentPool<>(2, TestEnvironment::new);
+
+    @Test
+    void reusesReleasedEnvironments() throws Exception {
+        Transformation transformation = transformation("IN", "A.ecore");
+        TestEnvironment environment = pool.borrow(transformation);
+        pool.release(transformation, environment);
+
+        assertSame(environment, pool.borrow(transformation));
+        assertEquals(1L, stats().get("poolReused"));
+        assertEquals(1L, stats().get("poolCreated"));
+    }
+
+    @Test
+    void dropsEnvironmentsNoLongerCurrent() throws Exception {
+        Transformation transformation = transformation("IN", "A.ecore");
+        TestEnvironment environment = pool.borrow(transformation);
+        pool.release(transformation, environment);
+        environment.current = false;
+
+        assertNotSame(environment, pool.borrow(transformation));
+        assertEquals(1L, stats().get("poolDropped"));
+    }
+
+    @Test
+    void keepsEnvironmentsOfOtherMetamodelsApart() throws Exception {
+        Transformation before = transformation("IN", "A.ecore");
+        TestEnvironment environment = pool.borrow(before);
+        pool.release(before, environment);
+
+        // same module, reloaded with a renamed input model or another metamodel
+        assertEquals("Source", pool.borrow(transformation("Source", "A.ecore")).key);
+        assertNotSame(environment, pool.borrow(transformation("IN", "B.ecore")));
+        assertSame(environment, pool.borrow(before));
+    }
+
+    @Test
+    void keepsAtMostSizeIdleEnvironments() throws Exception {
+        Transformation transformation = transformation("IN", "A.ecore");
+        for (int i = 0; i < 3; i++) {
+            pool.release(transformation, new TestEnvironment(transformation));
+        }
+
+        assertEquals(2, stats().get("poolIdle"));
+        assertEquals(1L, stats().get("poolDropped"));
+    }
+
+    @Test
+    void warmupCreatesOneIdleEnvironment() throws Exception {
+        Transformation transformation = transformation("IN", "A.ecore");
+        pool.warmup(transformation);
+        pool.warmup(transformation);
+
+        assertEquals(1, stats().get("poolIdle"));
+        assertEquals(1L, stats().get("poolCreated"));
+    }
+
+    private Map<String, Object> stats() {
+        Map<String, Object> stats = new LinkedHashMap<>();
+        pool.putStats(stats, "pool");
+        return stats;
+    }
+
+    private static Transformation transformation(String input, String metamodel) {
+        Transformation transformation = new Transformation();
+        transformation.folderPath = "/zoo/Test";
+        transformation.atlFile = "Test.atl";
+        transformation.inputMetamodels.add(new NamedFile(input, metamodel));
+        transformation.outputMetamodels.add(new NamedFile("OUT", "Out.ecore"));
+        return transformation;
+    }
+}
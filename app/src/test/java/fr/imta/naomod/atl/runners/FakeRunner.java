@@ -0,0 +1,46 @@
+package fr.imta.naomod.atl.runners;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.eclipse.emf.ecore.resource.Resource;
+import org.eclipse.emf.ecore.resource.ResourceSet;
+
+import fr.imta.naomod.atl.Transformation;
+
+/**
+ * Runner producing results without outputs, counting the results opened and
+ * closed, for the tests of what schedules executions.
+ */
+public class FakeRunner extends ATLRunner {
+    private final AtomicInteger opened = new AtomicInteger();
+    private final AtomicInteger closed = new AtomicInteger();
+
+    @Override
+    protected Map<String, Resource> execute(Map<String, ModelInput> sources, Transformation transfo,
+            ResourceSet resourceSet) {
+        return new LinkedHashMap<>();
+    }
+
+    @Override
+    protected void dispose(ResourceSet resourceSet) {
+        closed.incrementAndGet();
+        super.dispose(resourceSet);
+    }
+
+    /**
+     * A new result, to be closed.
+     */
+    public TransformationResult result() {
+        opened.incrementAndGet();
+        return new TransformationResult(this, new Transformation(), createResourceSet(), new LinkedHashMap<>(), 0);
+    }
+
+    /**
+     * Results not closed yet.
+     */
+    public int getOpen() {
+        return opened.get() - closed.get();
+    }
+}
@@ -0,0 +1,111 @@
+package fr.imta.naomod.atl.runners;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotSame;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.FileTime;
+
+import org.eclipse.emf.ecore.EClass;
+import org.eclipse.emf.ecore.EPackage;
+import org.eclipse.emf.ecore.resource.Resource;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+class MetamodelRegistryTest {
+    @TempDir
+    Path directory;
+
+    @Test
+    void sharesLoadedMetamodels() throws IOException {
+        MetamodelRegistry registry = new MetamodelRegistry(Long.MAX_VALUE);
+        Path file = write("A.ecore", "A", "");
+
+        Resource first = registry.get(file.toString());
+        assertSame(first, registry.get(directory.resolve("./A.ecore").toString()));
+        assertEquals(1L, registry.getStats().get("hits"));
+        assertEquals(1L, registry.getStats().get("misses"));
+    }
+
+    @Test
+    void reloadsChangedFiles() throws IOException {
+        MetamodelRegistry registry = new MetamodelRegistry(Long.MAX_VALUE);
+        Path file = write("A.ecore", "A", "");
+        Resource first = registry.get(file.toString());
+
+        write("A.ecore", "A", "<eClassifiers xsi:type=\"ecore:EClass\" name=\"Other\"/>");
+        Files.setLastModifiedTime(file, FileTime.fromMillis(Files.getLastModifiedTime(file).toMillis() + 1000));
+        Resource second = registry.get(file.toString());
+
+        assertNotSame(first, second);
+        assertEquals(2, ((EPackage) second.getContents().get(0)).getEClassifiers().size());
+    }
+
+    @Test
+    void evictsLeastRecentlyUsedOverBudget() throws IOException {
+        Path a = write("A.ecore", "A", "");
+        Path b = write("B.ecore", "B", "");
+        // room for a single metamodel
+        MetamodelRegistry registry = new MetamodelRegistry(Files.size(a) * 10 + 1);
+
+        Resource first = registry.get(a.toString());
+        registry.get(b.toString());
+
+        assertEquals(1, registry.getStats().get("entries"));
+        assertEquals(1L, registry.getStats().get("evictions"));
+        assertNotSame(first, registry.get(a.toString()));
+    }
+
+    @Test
+    void referencedMetamodelsAreTheRegisteredOnes() throws IOException {
+        MetamodelRegistry registry = new MetamodelRegistry(Long.MAX_VALUE);
+        Path base = write("Base.ecore", "Base", "");
+        Path derived = write("Derived.ecore", "Derived",
+            "<eClassifiers xsi:type=\"ecore:EClass\" name=\"Sub\" eSuperTypes=\"Base.ecore#//Element\"/>");
+
+        Resource derivedResource = registry.get(derived.toString());
+        Resource baseResource = registry.get(base.toString());
+
+        EClass sub = (EClass) ((EPackage) derivedResource.getContents().get(0)).getEClassifier("Sub");
+        EClass element = (EClass) ((EPackage) baseResource.getContents().get(0)).getEClassifier("Element");
+        assertSame(element, sub.getESuperTypes().get(0));
+    }
+
+    @Test
+    void cyclicReferencesLoad() throws IOException {
+        MetamodelRegistry registry = new MetamodelRegistry(Long.MAX_VALUE);
+        Path a = write("A.ecore", "A",
+            "<eClassifiers xsi:type=\"ecore:EClass\" name=\"FromA\" eSuperTypes=\"B.ecore#//Element\"/>");
+        write("B.ecore", "B",
+            "<eClassifiers xsi:type=\"ecore:EClass\" name=\"FromB\" eSuperTypes=\"A.ecore#//Element\"/>");
+
+        Resource resource = registry.get(a.toString());
+
+        EClass fromA = (EClass) ((EPackage) resource.getContents().get(0)).getEClassifier("FromA");
+        assertEquals("Element", fromA.getESuperTypes().get(0).getName());
+        assertEquals(2, registry.getStats().get("entries"));
+    }
+
+    @Test
+    void missingFile() {
+        MetamodelRegistry registry = new MetamodelRegistry(Long.MAX_VALUE);
+        assertThrows(IOException.class, () -> registry.get(directory.resolve("Missing.ecore").toString()));
+    }
+
+    // A package with an Element class and the given classifiers
+    private Path write(String file, String name, String classifiers) throws IOException {
+        return Files.writeString(directory.resolve(file), """
+            <?xml version="1.0" encoding="UTF-8"?>
+            <ecore:EPackage xmi:version="2.0" xmlns:xmi="http://www.omg.org/XMI"
+                xmlns:xsi="http://www.w3.org/2001/XMLSchema-instance"
+                xmlns:ecore="http://www.eclipse.org/emf/2002/Ecore" name="%s" nsURI="%s" nsPrefix="%s">
+              <eClassifiers xsi:type="ecore:EClass" name="Element"/>
+              %s
+            </ecore:EPackage>
+            """.formatted(name, name, name, classifiers));
+    }
+}
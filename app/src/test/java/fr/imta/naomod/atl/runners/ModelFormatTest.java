@@ -0,0 +1,130 @@
+package fr.imta.naomod.atl.runners;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.FilterInputStream;
+import java.io.FilterOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+
+import org.eclipse.emf.common.util.URI;
+import org.eclipse.emf.ecore.EAttribute;
+import org.eclipse.emf.ecore.EClass;
+import org.eclipse.emf.ecore.EObject;
+import org.eclipse.emf.ecore.EPackage;
+import org.eclipse.emf.ecore.EcoreFactory;
+import org.eclipse.emf.ecore.EcorePackage;
+import org.eclipse.emf.ecore.resource.Resource;
+import org.eclipse.emf.ecore.resource.ResourceSet;
+import org.eclipse.emf.ecore.resource.impl.ResourceSetImpl;
+import org.eclipse.emf.ecore.xmi.impl.XMIResourceFactoryImpl;
+import org.junit.jupiter.api.Test;
+
+class ModelFormatTest {
+    private final EPackage metamodel = metamodel();
+    private final EClass element = (EClass) metamodel.getEClassifier("Element");
+
+    @Test
+    void roundTrips() throws IOException {
+        for (ModelFormat format : ModelFormat.values()) {
+            Resource model = model(1000);
+            ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+            // not a ByteArrayOutputStream either, which is written to directly
+            try (OutputStream out = new FilterOutputStream(bytes)) {
+                format.save(model, out);
+                assertTrue(bytes.size() > 0, format.name());
+            }
+
+            Resource loaded = resourceSet().createResource(URI.createURI("loaded." + format.getExtension()));
+            format.load(loaded, new CountingInputStream(bytes.toByteArray()));
+
+            assertEquals(1000, loaded.getContents().size(), format.name());
+            EObject last = loaded.getContents().get(999);
+            assertEquals("element999", last.eGet(element.getEStructuralFeature("name")), format.name());
+        }
+    }
+
+    @Test
+    void binaryStreamsAreBuffered() throws IOException {
+        Resource model = model(1000);
+        long[] writes = new long[2];
+        OutputStream counting = new OutputStream() {
+            @Override
+            public void write(int b) {
+                writes[0]++;
+                writes[1]++;
+            }
+
+            @Override
+            public void write(byte[] b, int off, int len) {
+                writes[0]++;
+                writes[1] += len;
+            }
+        };
+        ModelFormat.BINARY.save(model, counting);
+        assertTrue(writes[0] < 10, writes[0] + " writes for " + writes[1] + " bytes");
+
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        ModelFormat.BINARY.save(model, out);
+        CountingInputStream in = new CountingInputStream(out.toByteArray());
+        ModelFormat.BINARY.load(resourceSet().createResource(URI.createURI("loaded.bin")), in);
+        assertTrue(in.reads < 10, in.reads + " reads");
+    }
+
+    private Resource model(int elements) {
+        Resource resource = resourceSet().createResource(URI.createURI("model.xmi"));
+        for (int i = 0; i < elements; i++) {
+            EObject object = metamodel.getEFactoryInstance().create(element);
+            object.eSet(element.getEStructuralFeature("name"), "element" + i);
+            resource.getContents().add(object);
+        }
+        return resource;
+    }
+
+    private ResourceSet resourceSet() {
+        ResourceSet resourceSet = new ResourceSetImpl();
+        resourceSet.getResourceFactoryRegistry().getExtensionToFactoryMap().put("*", new XMIResourceFactoryImpl());
+        resourceSet.getPackageRegistry().put(metamodel.getNsURI(), metamodel);
+        return resourceSet;
+    }
+
+    private static EPackage metamodel() {
+        EcoreFactory factory = EcoreFactory.eINSTANCE;
+        EPackage pkg = factory.createEPackage();
+        pkg.setName("Test");
+        pkg.setNsURI("http://test/format");
+        pkg.setNsPrefix("test");
+        EClass element = factory.createEClass();
+        element.setName("Element");
+        EAttribute name = factory.createEAttribute();
+        name.setName("name");
+        name.setEType(EcorePackage.Literals.ESTRING);
+        element.getEStructuralFeatures().add(name);
+        pkg.getEClassifiers().add(element);
+        return pkg;
+    }
+
+    // Not a ByteArrayInputStream, so that the formats treat it like a file or a request body
+    private static class CountingInputStream extends FilterInputStream {
+        long reads;
+
+        CountingInputStream(byte[] bytes) {
+            super(new ByteArrayInputStream(bytes));
+        }
+
+        @Override
+        public int read() throws IOException {
+            reads++;
+            return super.read();
+        }
+
+        @Override
+        public int read(byte[] b, int off, int len) throws IOException {
+            reads++;
+            return super.read(b, off, len);
+        }
+    }
+}
@@ -0,0 +1,46 @@
+package fr.imta.naomod.atl.runners;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.Random;
+
+import org.junit.jupiter.api.Test;
+
+class OutputBufferTest {
+    @Test
+    void keepsSmallContentInMemory() throws IOException {
+        byte[] content = bytes(100);
+        OutputBuffer buffer = new OutputBuffer(1000);
+        buffer.write(content);
+
+        assertEquals(100, buffer.size());
+        assertArrayEquals(content, buffer.toByteArray());
+        buffer.discard();
+    }
+
+    @Test
+    void spillsPastThreshold() throws IOException {
+        byte[] content = bytes(10_000);
+        OutputBuffer buffer = new OutputBuffer(1000);
+        for (int i = 0; i < content.length; i += 300) {
+            buffer.write(content, i, Math.min(300, content.length - i));
+        }
+
+        assertEquals(content.length, buffer.size());
+        try (InputStream in = buffer.openInputStream()) {
+            assertArrayEquals(content, in.readAllBytes());
+        }
+        // read again, e.g. by the next step of a chain and the result cache
+        assertArrayEquals(content, buffer.toByteArray());
+        buffer.discard();
+    }
+
+    private static byte[] bytes(int size) {
+        byte[] bytes = new byte[size];
+        new Random(size).nextBytes(bytes);
+        return bytes;
+    }
+}
@@ -0,0 +1,130 @@
+package fr.imta.naomod.atl.runners;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.file.Path;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+class ResultCacheTest {
+    @TempDir
+    Path directory;
+
+    private final Map<String, ByteArrayOutputStream> sent = new LinkedHashMap<>();
+
+    @Test
+    void servesRecordedOutputs() throws IOException {
+        ResultCache cache = new ResultCache(1000, null);
+        try (ResultCache.Recorder recorder = cache.record("key", "T", this::open)) {
+            write(recorder, "out", 100);
+            recorder.store();
+        }
+
+        Map<String, ByteArrayOutputStream> first = new LinkedHashMap<>(sent);
+        sent.clear();
+        assertTrue(cache.load("key", "T", this::open));
+        assertArrayEquals(first.get("out").toByteArray(), sent.get("out").toByteArray());
+        assertEquals(1L, cache.getStats().get("hits"));
+        assertEquals(0L, cache.getStats().get("recordingBytes"));
+    }
+
+    @Test
+    void skipsOutputsLargerThanAQuarterOfTheBudget() throws IOException {
+        ResultCache cache = new ResultCache(1000, null);
+        try (ResultCache.Recorder recorder = cache.record("key", "T", this::open)) {
+            write(recorder, "out", 251);
+            recorder.store();
+        }
+
+        // the response itself is complete
+        assertEquals(251, sent.get("out").size());
+        assertFalse(cache.load("key", "T", this::open));
+        assertEquals(1L, cache.getStats().get("skippedRecordings"));
+    }
+
+    @Test
+    void boundsTheMemoryOfConcurrentRecordings() throws IOException {
+        ResultCache cache = new ResultCache(1000, null);
+        ResultCache.Recorder[] recorders = new ResultCache.Recorder[5];
+        for (int i = 0; i < recorders.length; i++) {
+            recorders[i] = cache.record("key" + i, "T", this::open);
+            write(recorders[i], "out" + i, 240);
+        }
+
+        // four copies fit in the budget, the fifth one is dropped
+        assertEquals(960L, cache.getStats().get("recordingBytes"));
+        assertEquals(1L, cache.getStats().get("skippedRecordings"));
+        for (ResultCache.Recorder recorder : recorders) {
+            recorder.close();
+        }
+        assertEquals(0L, cache.getStats().get("recordingBytes"));
+    }
+
+    @Test
+    void readsEntriesBackFromDisk() throws IOException {
+        ResultCache cache = new ResultCache(1000, directory);
+        try (ResultCache.Recorder recorder = cache.record("key", "T", this::open)) {
+            write(recorder, "out", 100);
+            recorder.store();
+        }
+
+        ResultCache restarted = new ResultCache(1000, directory);
+        sent.clear();
+        assertTrue(restarted.load("key", "T", this::open));
+        assertEquals(100, sent.get("out").size());
+        assertEquals(1L, restarted.getStats().get("diskHits"));
+    }
+
+    @Test
+    void invalidateDropsTheEntriesOfATransformation() throws IOException {
+        ResultCache cache = new ResultCache(1000, directory);
+        for (String transformation : new String[] {"A", "B"}) {
+            try (ResultCache.Recorder recorder = cache.record("key" + transformation, transformation, this::open)) {
+                write(recorder, "out", 10);
+                recorder.store();
+            }
+        }
+
+        cache.invalidate("A");
+        assertFalse(cache.load("keyA", "A", this::open));
+        assertTrue(cache.load("keyB", "B", this::open));
+    }
+
+    @Test
+    void evictsLeastRecentlyUsedOverBudget() throws IOException {
+        ResultCache cache = new ResultCache(1000, null);
+        for (int i = 0; i < 5; i++) {
+            try (ResultCache.Recorder recorder = cache.record("key" + i, "T", this::open)) {
+                write(recorder, "out", 250);
+                recorder.store();
+            }
+        }
+
+        assertEquals(4, cache.getStats().get("entries"));
+        assertEquals(1L, cache.getStats().get("evictions"));
+        assertFalse(cache.load("key0", "T", this::open));
+    }
+
+    private OutputStream open(String name) {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        sent.put(name, out);
+        return out;
+    }
+
+    private static void write(OutputSink sink, String name, int size) throws IOException {
+        try (OutputStream out = sink.open(name)) {
+            for (int i = 0; i < size; i++) {
+                out.write(i);
+            }
+        }
+    }
+}
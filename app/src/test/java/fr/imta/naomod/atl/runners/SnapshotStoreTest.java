@@ -0,0 +1,106 @@
+package fr.imta.naomod.atl.runners;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.FileTime;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+class SnapshotStoreTest {
+    @TempDir
+    Path directory;
+
+    @Test
+    void entriesSurviveARestart() throws IOException {
+        Path file = directory.resolve("snapshot.bin");
+        Path a = Files.writeString(directory.resolve("A.atl"), "module A;");
+        Path b = Files.writeString(directory.resolve("B.ecore"), "<ecore/>");
+
+        SnapshotStore store = new SnapshotStore(file);
+        store.put(SnapshotStore.Kind.EMFTVM_MODULE, a, bytes("compiled A"));
+        store.put(SnapshotStore.Kind.METAMODEL, b, bytes("binary B"));
+        store.save();
+
+        SnapshotStore restarted = new SnapshotStore(file);
+        assertEquals(2, restarted.getStats().get("entries"));
+        assertArrayEquals(bytes("compiled A"), restarted.get(SnapshotStore.Kind.EMFTVM_MODULE, a));
+        assertArrayEquals(bytes("binary B"), restarted.get(SnapshotStore.Kind.METAMODEL, b));
+        // entries are per kind
+        assertNull(restarted.get(SnapshotStore.Kind.ASM_MODULE, a));
+    }
+
+    @Test
+    void savingAgainKeepsMappedEntries() throws IOException {
+        Path file = directory.resolve("snapshot.bin");
+        Path a = Files.writeString(directory.resolve("A.atl"), "module A;");
+        Path b = Files.writeString(directory.resolve("B.atl"), "module B;");
+        SnapshotStore store = new SnapshotStore(file);
+        store.put(SnapshotStore.Kind.EMFTVM_MODULE, a, bytes("compiled A"));
+        store.save();
+
+        SnapshotStore second = new SnapshotStore(file);
+        second.put(SnapshotStore.Kind.EMFTVM_MODULE, b, bytes("compiled B"));
+        second.save();
+
+        SnapshotStore third = new SnapshotStore(file);
+        assertArrayEquals(bytes("compiled A"), third.get(SnapshotStore.Kind.EMFTVM_MODULE, a));
+        assertArrayEquals(bytes("compiled B"), third.get(SnapshotStore.Kind.EMFTVM_MODULE, b));
+    }
+
+    @Test
+    void changedSourcesAreStale() throws IOException {
+        Path file = directory.resolve("snapshot.bin");
+        Path a = Files.writeString(directory.resolve("A.atl"), "module A;");
+        Path b = Files.writeString(directory.resolve("B.atl"), "module B;");
+        SnapshotStore store = new SnapshotStore(file);
+        store.put(SnapshotStore.Kind.EMFTVM_MODULE, a, bytes("compiled A"));
+        store.put(SnapshotStore.Kind.EMFTVM_MODULE, b, bytes("compiled B"));
+        store.save();
+
+        Files.writeString(a, "module A; -- changed");
+        // touched, e.g. by a checkout, with the same content
+        Files.setLastModifiedTime(b, FileTime.fromMillis(Files.getLastModifiedTime(b).toMillis() + 5000));
+
+        SnapshotStore restarted = new SnapshotStore(file);
+        assertNull(restarted.get(SnapshotStore.Kind.EMFTVM_MODULE, a));
+        assertArrayEquals(bytes("compiled B"), restarted.get(SnapshotStore.Kind.EMFTVM_MODULE, b));
+        assertEquals(1L, restarted.getStats().get("stale"));
+        assertEquals(1, restarted.getStats().get("entries"));
+    }
+
+    @Test
+    void ignoresFilesOfAnotherFormat() throws IOException {
+        Path file = Files.write(directory.resolve("snapshot.bin"), bytes("not a snapshot"));
+        Path a = Files.writeString(directory.resolve("A.atl"), "module A;");
+
+        SnapshotStore store = new SnapshotStore(file);
+        assertEquals(0, store.getStats().get("entries"));
+        assertNull(store.get(SnapshotStore.Kind.EMFTVM_MODULE, a));
+
+        // and replaces them
+        store.put(SnapshotStore.Kind.EMFTVM_MODULE, a, bytes("compiled A"));
+        store.save();
+        assertArrayEquals(bytes("compiled A"), new SnapshotStore(file).get(SnapshotStore.Kind.EMFTVM_MODULE, a));
+    }
+
+    @Test
+    void disabledWithoutFile() throws IOException {
+        Path a = Files.writeString(directory.resolve("A.atl"), "module A;");
+        SnapshotStore store = new SnapshotStore(null);
+        store.put(SnapshotStore.Kind.EMFTVM_MODULE, a, bytes("compiled A"));
+
+        assertNull(store.get(SnapshotStore.Kind.EMFTVM_MODULE, a));
+        assertEquals(false, store.getStats().get("enabled"));
+    }
+
+    private static byte[] bytes(String content) {
+        return content.getBytes(StandardCharsets.UTF_8);
+    }
+}
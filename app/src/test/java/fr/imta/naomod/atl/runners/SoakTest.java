@@ -0,0 +1,99 @@
+package fr.imta.naomod.atl.runners;
+
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.OutputStream;
+import java.lang.management.ManagementFactory;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Map;
+import java.util.stream.Stream;
+
+import org.junit.jupiter.api.Tag;
+import org.junit.jupiter.api.io.TempDir;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.ValueSource;
+
+import fr.imta.naomod.atl.Config;
+import fr.imta.naomod.atl.NamedFile;
+import fr.imta.naomod.atl.Transformation;
+
+/**
+ * Applies Class2Relational over and over with each runner and checks that the
+ * heap retained once the models of the requests are released stays flat.
+ *
+ * Tagged "soak": run by the soakTest task of the build, 100,000 times by
+ * default (ATL_SOAK_ITERATIONS), not by the unit tests.
+ */
+@Tag("soak")
+class SoakTest {
+    private static final Path RESOURCES = Path.of("src/main/resources/transformations/Class2Relational");
+    private static final int ITERATIONS = Config.getInt("ATL_SOAK_ITERATIONS", 100_000);
+    // retained heap allowed to grow between the end of the warmup and the end of the run
+    private static final long MAX_GROWTH = Config.getLong("ATL_SOAK_MAX_GROWTH_BYTES", 16L * 1024 * 1024);
+
+    private static final String MODEL = """
+        <?xml version="1.0" encoding="UTF-8"?>
+        <xmi:XMI xmi:version="2.0" xmlns:xmi="http://www.omg.org/XMI" xmlns:Class="Class">
+          <Class:DataType name="Integer"/>
+          <Class:DataType name="String"/>
+          <Class:Class name="Person">
+            <attr name="name" type="/1"/>
+            <attr name="age" type="/0"/>
+            <attr name="friends" multiValued="true" type="/2"/>
+          </Class:Class>
+          <Class:Class name="Family">
+            <attr name="name" type="/1"/>
+            <attr name="members" multiValued="true" type="/2"/>
+          </Class:Class>
+        </xmi:XMI>
+        """;
+
+    @TempDir
+    Path directory;
+
+    @ParameterizedTest
+    @ValueSource(strings = {"EMFTVM", "EMFVM"})
+    void retainedHeapStaysFlat(String compiler) throws Exception {
+        // the runners may write what they compile next to the module
+        try (Stream<Path> files = Files.list(RESOURCES)) {
+            for (Path file : files.toList()) {
+                Files.copy(file, directory.resolve(file.getFileName()));
+            }
+        }
+        Path model = Files.writeString(directory.resolve("model.xmi"), MODEL);
+
+        Transformation transformation = new Transformation();
+        transformation.name = "Class2Relational";
+        transformation.atlFile = "Class2Relational.atl";
+        transformation.folderPath = directory.toString();
+        transformation.compiler = compiler;
+        transformation.inputMetamodels.add(new NamedFile("IN", "Class.ecore"));
+        transformation.outputMetamodels.add(new NamedFile("OUT", "Relational.ecore"));
+
+        ATLRunner runner = compiler.equals("EMFVM") ? new EMFVMRunner() : new EMFTVMRunner();
+        Map<String, ModelInput> inputs = Map.of("IN", ModelInput.file(model.toString()));
+
+        // caches, pools and JIT settle during the first tenth
+        int warmup = Math.max(1, ITERATIONS / 10);
+        long baseline = 0;
+        for (int i = 0; i < ITERATIONS; i++) {
+            if (i == warmup) {
+                baseline = retainedHeap();
+            }
+            runner.applyTransformation(inputs, transformation, name -> OutputStream.nullOutputStream(), ModelFormat.XMI);
+        }
+        long growth = retainedHeap() - baseline;
+
+        assertTrue(growth < MAX_GROWTH, compiler + " retained " + growth + " more bytes after " + ITERATIONS
+            + " executions, from " + baseline);
+    }
+
+    private static long retainedHeap() throws InterruptedException {
+        for (int i = 0; i < 3; i++) {
+            System.gc();
+            Thread.sleep(100);
+        }
+        return ManagementFactory.getMemoryMXBean().getHeapMemoryUsage().getUsed();
+    }
+}
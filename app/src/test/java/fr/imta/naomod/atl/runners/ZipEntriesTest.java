@@ -0,0 +1,143 @@
+package fr.imta.naomod.atl.runners;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipOutputStream;
+
+import org.eclipse.emf.common.util.URI;
+import org.eclipse.emf.ecore.EAttribute;
+import org.eclipse.emf.ecore.EClass;
+import org.eclipse.emf.ecore.EObject;
+import org.eclipse.emf.ecore.EPackage;
+import org.eclipse.emf.ecore.EcoreFactory;
+import org.eclipse.emf.ecore.EcorePackage;
+import org.eclipse.emf.ecore.resource.Resource;
+import org.eclipse.emf.ecore.resource.ResourceSet;
+import org.eclipse.emf.ecore.resource.impl.ResourceSetImpl;
+import org.eclipse.emf.ecore.xmi.impl.XMIResourceFactoryImpl;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+class ZipEntriesTest {
+    private static final EPackage METAMODEL = metamodel();
+
+    @TempDir
+    Path directory;
+
+    @Test
+    void readsEachEntryFromItsOwnOffset() throws IOException {
+        byte[] zip = zip("first", "second", "third");
+        AtomicInteger opened = new AtomicInteger();
+        ModelInput.Content content = () -> {
+            opened.incrementAndGet();
+            return new ByteArrayInputStream(zip);
+        };
+
+        List<ZipEntries.Entry> entries = ZipEntries.list(content, zip.length);
+
+        assertEquals(List.of("models/first.xmi", "models/second.xmi", "models/third.xmi"),
+            entries.stream().map(ZipEntries.Entry::name).toList());
+        // the end record and the central directory, whatever the number of entries
+        assertEquals(2, opened.get());
+        assertEquals("third", name(entries.get(2).input()));
+        assertEquals("first", name(entries.get(0).input()));
+        assertEquals(4, opened.get());
+    }
+
+    @Test
+    void keepsEntriesWithTheSameNameApart() throws IOException {
+        // names of the same length, the second one renamed after the first once written
+        byte[] zip = replace(zip("first", "secnd"), "models/secnd.xmi", "models/first.xmi");
+        Path file = Files.write(directory.resolve("models.zip"), zip);
+
+        List<ZipEntries.Entry> entries = ZipEntries.list(() -> Files.newInputStream(file), Files.size(file));
+
+        assertEquals(List.of("models/first.xmi", "models/first.xmi"),
+            entries.stream().map(ZipEntries.Entry::name).toList());
+        assertEquals("first", name(entries.get(0).input()));
+        assertEquals("secnd", name(entries.get(1).input()));
+    }
+
+    @Test
+    void notAnArchive() {
+        byte[] bytes = "<xmi/>".getBytes(StandardCharsets.UTF_8);
+        assertThrows(IOException.class, () -> ZipEntries.list(() -> new ByteArrayInputStream(bytes), bytes.length));
+    }
+
+    // An archive with a directory and a model per name, whose element has that name
+    private static byte[] zip(String... names) throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        try (ZipOutputStream zip = new ZipOutputStream(bytes)) {
+            zip.putNextEntry(new ZipEntry("models/"));
+            zip.closeEntry();
+            for (String name : names) {
+                zip.putNextEntry(new ZipEntry("models/" + name + ".xmi"));
+                model(name).save(zip, null);
+                zip.closeEntry();
+            }
+        }
+        return bytes.toByteArray();
+    }
+
+    private static byte[] replace(byte[] bytes, String from, String to) {
+        byte[] target = from.getBytes(StandardCharsets.UTF_8);
+        byte[] replacement = to.getBytes(StandardCharsets.UTF_8);
+        for (int i = 0; i + target.length <= bytes.length; i++) {
+            boolean found = true;
+            for (int j = 0; j < target.length && found; j++) {
+                found = bytes[i + j] == target[j];
+            }
+            if (found) {
+                System.arraycopy(replacement, 0, bytes, i, replacement.length);
+            }
+        }
+        return bytes;
+    }
+
+    private static Resource model(String name) {
+        EClass element = (EClass) METAMODEL.getEClassifier("Element");
+        EObject object = METAMODEL.getEFactoryInstance().create(element);
+        object.eSet(element.getEStructuralFeature("name"), name);
+        Resource resource = resourceSet().createResource(URI.createURI("model.xmi"));
+        resource.getContents().add(object);
+        return resource;
+    }
+
+    private static String name(ModelInput input) throws IOException {
+        EObject object = input.load(resourceSet(), "IN").getContents().get(0);
+        return (String) object.eGet(object.eClass().getEStructuralFeature("name"));
+    }
+
+    private static ResourceSet resourceSet() {
+        ResourceSet resourceSet = new ResourceSetImpl();
+        resourceSet.getResourceFactoryRegistry().getExtensionToFactoryMap().put("*", new XMIResourceFactoryImpl());
+        resourceSet.getPackageRegistry().put(METAMODEL.getNsURI(), METAMODEL);
+        return resourceSet;
+    }
+
+    private static EPackage metamodel() {
+        EcoreFactory factory = EcoreFactory.eINSTANCE;
+        EPackage pkg = factory.createEPackage();
+        pkg.setName("Test");
+        pkg.setNsURI("http://test/zip");
+        pkg.setNsPrefix("test");
+        EClass element = factory.createEClass();
+        element.setName("Element");
+        EAttribute name = factory.createEAttribute();
+        name.setName("name");
+        name.setEType(EcorePackage.Literals.ESTRING);
+        element.getEStructuralFeatures().add(name);
+        pkg.getEClassifiers().add(element);
+        return pkg;
+    }
+}
@@ -0,0 +1,98 @@
+package fr.imta.naomod.atl;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Comparator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.stream.Stream;
+
+import io.vertx.core.json.Json;
+
+/**
+ * The transformations bundled in the resources of the app, as a catalog
+ * directory of the ATL zoo: each one in its folder, described by a JSON file.
+ *
+ * The resources are copied to a temporary directory, the runners writing the
+ * modules they compile next to their source. They are read from
+ * ATL_BENCHMARK_TRANSFORMATIONS, set by the build.
+ */
+final class BundledTransformations {
+    static final List<String> NAMES = List.of("Class2Relational", "Grafcet2PetriNet", "Make2Ant", "Ant2Maven",
+        "XSLT2XQuery");
+
+    private static final Path RESOURCES = Path.of(Config.getString("ATL_BENCHMARK_TRANSFORMATIONS",
+        "../app/src/main/resources/transformations"));
+
+    // model name and metamodel file of the inputs and outputs, as in the header of each module
+    private static final Map<String, List<List<NamedFile>>> METAMODELS = new LinkedHashMap<>();
+
+    static {
+        METAMODELS.put("Class2Relational", List.of(
+            List.of(new NamedFile("IN", "Class.ecore")),
+            List.of(new NamedFile("OUT", "Relational.ecore"))));
+        METAMODELS.put("Grafcet2PetriNet", List.of(
+            List.of(new NamedFile("IN", "Grafcet.ecore")),
+            List.of(new NamedFile("OUT", "PetriNet.ecore"))));
+        METAMODELS.put("Make2Ant", List.of(
+            List.of(new NamedFile("IN", "Make.ecore")),
+            List.of(new NamedFile("OUT", "Ant.ecore"))));
+        METAMODELS.put("Ant2Maven", List.of(
+            List.of(new NamedFile("IN", "Ant.ecore")),
+            List.of(new NamedFile("OUTMaven", "Maven.ecore"), new NamedFile("OUTProject", "Maven.ecore"))));
+        METAMODELS.put("XSLT2XQuery", List.of(
+            List.of(new NamedFile("IN", "XSLT.ecore")),
+            List.of(new NamedFile("OUT", "XQuery.ecore"))));
+    }
+
+    private BundledTransformations() {}
+
+    /**
+     * Copies the bundled transformations to a new catalog directory, all of
+     * them run by the given compiler.
+     */
+    static Path copy(String compiler) throws IOException {
+        Path directory = Files.createTempDirectory("atl-benchmark-");
+        for (String name : NAMES) {
+            Path folder = Files.createDirectory(directory.resolve(name));
+            try (Stream<Path> files = Files.list(RESOURCES.resolve(name))) {
+                for (Path file : files.toList()) {
+                    Files.copy(file, folder.resolve(file.getFileName()));
+                }
+            }
+            Transformation transformation = get(directory, name, compiler);
+            Files.writeString(folder.resolve(name + ".json"), Json.encode(new Transformation[] {transformation}));
+        }
+        return directory;
+    }
+
+    /**
+     * A bundled transformation of a catalog directory made by {@link #copy(String)}.
+     */
+    static Transformation get(Path directory, String name, String compiler) {
+        List<List<NamedFile>> metamodels = METAMODELS.get(name);
+        if (metamodels == null) {
+            throw new IllegalArgumentException("Unknown bundled transformation " + name);
+        }
+        Transformation transformation = new Transformation();
+        transformation.name = name;
+        transformation.atlFile = name + ".atl";
+        transformation.folderPath = directory.resolve(name).toAbsolutePath().toString();
+        transformation.compiler = compiler;
+        transformation.enabled = true;
+        transformation.inputMetamodels.addAll(metamodels.get(0));
+        transformation.outputMetamodels.addAll(metamodels.get(1));
+        return transformation;
+    }
+
+    static void delete(Path directory) throws IOException {
+        if (directory == null) return;
+        try (Stream<Path> files = Files.walk(directory)) {
+            for (Path file : files.sorted(Comparator.reverseOrder()).toList()) {
+                Files.deleteIfExists(file);
+            }
+        }
+    }
+}
@@ -0,0 +1,128 @@
+package fr.imta.naomod.atl;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import io.vertx.core.json.Json;
+
+/**
+ * Catalog operations on a synthetic ATL zoo of a few thousand folders, each
+ * holding a copy of a bundled module and two small metamodels, linked so that
+ * the transformations form chains: reading the catalog at startup, indexing
+ * it, and the lookups served by /transformation/:name,
+ * /transformations/search and /transformations/path.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3)
+@Measurement(iterations = 5)
+@Fork(1)
+public class CatalogBenchmark {
+    private static final String[] QUERIES = {"attribute", "class table", "helper", "toString", "project target"};
+
+    @Param({"1000", "5000"})
+    public int folders;
+
+    private Path directory;
+    private List<Transformation> loaded;
+    private TransformationRegistry registry;
+    private String[] names;
+    private int metamodels;
+    private int next;
+
+    @Setup(Level.Trial)
+    public void setUp() throws Exception {
+        directory = Files.createTempDirectory("atl-benchmark-catalog-");
+        Path bundled = BundledTransformations.copy("EMFTVM");
+        try {
+            write(bundled);
+        } finally {
+            BundledTransformations.delete(bundled);
+        }
+        loaded = CatalogLoader.load(List.of(directory.toFile()));
+        registry = new TransformationRegistry();
+        registry.registerAll(loaded);
+        names = loaded.stream().map(t -> t.name).toArray(String[]::new);
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws Exception {
+        BundledTransformations.delete(directory);
+    }
+
+    // transformation i reads metamodel M(i % m) and writes M((7i + 1) % m), m being a tenth of the folders
+    private void write(Path bundled) throws Exception {
+        metamodels = Math.max(2, folders / 10);
+        String input = Files.readString(bundled.resolve("Class2Relational/Class.ecore"));
+        String output = Files.readString(bundled.resolve("Class2Relational/Relational.ecore"));
+        for (int i = 0; i < folders; i++) {
+            String base = BundledTransformations.NAMES.get(i % BundledTransformations.NAMES.size());
+            String name = base + "_" + i;
+            Path folder = Files.createDirectory(directory.resolve(name));
+            String source = Files.readString(bundled.resolve(base).resolve(base + ".atl"));
+            Files.writeString(folder.resolve(name + ".atl"), source.replace("module " + base + ";", "module " + name + ";"));
+
+            String from = "M" + (i % metamodels);
+            String to = "M" + ((7 * i + 1) % metamodels);
+            Files.writeString(folder.resolve(from + ".ecore"), input);
+            Files.writeString(folder.resolve(to + ".ecore"), output);
+
+            Transformation transformation = new Transformation();
+            transformation.name = name;
+            transformation.atlFile = name + ".atl";
+            transformation.compiler = "EMFTVM";
+            transformation.enabled = true;
+            transformation.inputMetamodels.add(new NamedFile("IN", from + ".ecore"));
+            transformation.outputMetamodels.add(new NamedFile("OUT", to + ".ecore"));
+            Files.writeString(folder.resolve(name + ".json"), Json.encode(new Transformation[] {transformation}));
+        }
+    }
+
+    // what the server reads at startup, without a snapshot
+    @Benchmark
+    public List<Transformation> loadCatalog() {
+        return CatalogLoader.load(List.of(directory.toFile()));
+    }
+
+    // indexes by name, metamodel and source, and the graph of chains
+    @Benchmark
+    public TransformationRegistry registerCatalog() {
+        TransformationRegistry registry = new TransformationRegistry();
+        registry.registerAll(new ArrayList<>(loaded));
+        return registry;
+    }
+
+    @Benchmark
+    public Transformation getTransformationByName() {
+        return registry.getByName(names[next++ % names.length]);
+    }
+
+    @Benchmark
+    public List<SearchResult> search() {
+        return registry.search(QUERIES[next++ % QUERIES.length]);
+    }
+
+    @Benchmark
+    public TransformationGraph.Chain findChain() {
+        int source = next++ % metamodels;
+        return registry.findChain("M" + source, "M" + (source + metamodels / 2) % metamodels, transformation -> 1);
+    }
+}
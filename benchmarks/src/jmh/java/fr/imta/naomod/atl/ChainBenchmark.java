@@ -0,0 +1,80 @@
+package fr.imta.naomod.atl;
+
+import java.io.OutputStream;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import fr.imta.naomod.atl.runners.ModelFormat;
+import fr.imta.naomod.atl.runners.ModelInput;
+import fr.imta.naomod.atl.runners.SnapshotStore;
+
+/**
+ * The Make2Ant, Ant2Maven chain applied by the TransformationManager to a
+ * synthetic Make model, as by /transformation/chain. The manager reads the
+ * bundled transformations as its only catalog directory, whatever the working
+ * directory of the fork.
+ *
+ * The process-wide state is set up in the fork as in the server: the
+ * metamodel registry, the logging thread and the snapshot store. The latter
+ * must be disabled (no ATL_SNAPSHOT_FILE), the modules and metamodels being
+ * otherwise read from the snapshot of a previous run.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3)
+@Measurement(iterations = 5)
+@Fork(1)
+public class ChainBenchmark {
+    private static final List<String> CHAIN = List.of("Make2Ant", "Ant2Maven");
+
+    @Param({"EMFTVM", "EMFVM"})
+    public String compiler;
+
+    @Param({"1000", "10000", "100000", "1000000"})
+    public int elements;
+
+    private Path directory;
+    private TransformationManager transformationManager;
+    private ModelInput input;
+
+    @Setup(Level.Trial)
+    public void setUp() throws Exception {
+        if (SnapshotStore.getInstance().isEnabled()) {
+            throw new IllegalStateException("ATL_SNAPSHOT_FILE must not be set when benchmarking");
+        }
+        directory = BundledTransformations.copy(compiler);
+        transformationManager = new TransformationManager(List.of(directory.toFile()));
+
+        Transformation first = transformationManager.getTransformationByName(CHAIN.get(0));
+        Path model = ModelGenerator.write(first, elements, ModelFormat.XMI, directory.resolve("input.xmi"));
+        input = ModelInput.file(model.toString(), ModelFormat.XMI);
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws Exception {
+        BundledTransformations.delete(directory);
+    }
+
+    @Benchmark
+    public void applyChain() throws Exception {
+        try (ChainResult result = transformationManager.applyTransformationChain(CHAIN, input)) {
+            result.getResult().save(name -> OutputStream.nullOutputStream(), ModelFormat.XMI);
+        }
+    }
+}
@@ -0,0 +1,112 @@
+package fr.imta.naomod.atl;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.concurrent.TimeUnit;
+
+import org.eclipse.emf.common.util.URI;
+import org.eclipse.emf.ecore.EPackage;
+import org.eclipse.emf.ecore.resource.Resource;
+import org.eclipse.emf.ecore.resource.ResourceSet;
+import org.eclipse.emf.ecore.resource.impl.ResourceSetImpl;
+import org.eclipse.emf.ecore.xmi.impl.XMIResourceFactoryImpl;
+import org.openjdk.jmh.annotations.AuxCounters;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import fr.imta.naomod.atl.runners.ModelFormat;
+
+/**
+ * Parsing and printing a synthetic model of a bundled transformation in XMI
+ * and in the binary format of EMF, what an upload and an output cost
+ * depending on the format the client chose. The size of the model in each
+ * format is reported as the bytes secondary result.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3)
+@Measurement(iterations = 5)
+@Fork(1)
+public class ModelFormatBenchmark {
+    @Param({"Class2Relational", "Grafcet2PetriNet", "Make2Ant", "Ant2Maven", "XSLT2XQuery"})
+    public String transformation;
+
+    @Param({"XMI", "BINARY"})
+    public ModelFormat format;
+
+    @Param({"1000", "10000", "100000", "1000000"})
+    public int elements;
+
+    private Path directory;
+    private Path model;
+    private long modelSize;
+    private Resource metamodel;
+    private Resource loaded;
+
+    @Setup(Level.Trial)
+    public void setUp() throws Exception {
+        directory = BundledTransformations.copy("EMFTVM");
+        Transformation transfo = BundledTransformations.get(directory, transformation, "EMFTVM");
+        model = ModelGenerator.write(transfo, elements, format, directory.resolve("model." + format.getExtension()));
+        modelSize = Files.size(model);
+        metamodel = ModelGenerator.inputMetamodel(transfo);
+        loaded = read();
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws Exception {
+        loaded.unload();
+        BundledTransformations.delete(directory);
+    }
+
+    /**
+     * The other figure to compare the formats on, next to the times.
+     */
+    @State(Scope.Thread)
+    @AuxCounters(AuxCounters.Type.EVENTS)
+    public static class Size {
+        public long bytes;
+    }
+
+    @Benchmark
+    public Resource load(Size size) throws IOException {
+        size.bytes = modelSize;
+        return read();
+    }
+
+    @Benchmark
+    public void save(Size size) throws IOException {
+        size.bytes = modelSize;
+        format.save(loaded, OutputStream.nullOutputStream());
+    }
+
+    private Resource read() throws IOException {
+        ResourceSet resourceSet = new ResourceSetImpl();
+        resourceSet.getResourceFactoryRegistry().getExtensionToFactoryMap().put("*", new XMIResourceFactoryImpl());
+        metamodel.getAllContents().forEachRemaining(o -> {
+            if (o instanceof EPackage pkg) {
+                resourceSet.getPackageRegistry().put(pkg.getNsURI(), pkg);
+            }
+        });
+        Resource resource = resourceSet.createResource(URI.createFileURI(model.toString()));
+        try (InputStream in = Files.newInputStream(model)) {
+            format.load(resource, in);
+        }
+        return resource;
+    }
+}
@@ -0,0 +1,238 @@
+package fr.imta.naomod.atl;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.eclipse.emf.common.util.URI;
+import org.eclipse.emf.ecore.EAttribute;
+import org.eclipse.emf.ecore.EClass;
+import org.eclipse.emf.ecore.EDataType;
+import org.eclipse.emf.ecore.EEnum;
+import org.eclipse.emf.ecore.EObject;
+import org.eclipse.emf.ecore.EPackage;
+import org.eclipse.emf.ecore.EReference;
+import org.eclipse.emf.ecore.resource.Resource;
+import org.eclipse.emf.ecore.resource.ResourceSet;
+import org.eclipse.emf.ecore.resource.impl.ResourceSetImpl;
+import org.eclipse.emf.ecore.util.EcoreUtil;
+import org.eclipse.emf.ecore.xmi.impl.EcoreResourceFactoryImpl;
+import org.eclipse.emf.ecore.xmi.impl.XMIResourceFactoryImpl;
+
+import fr.imta.naomod.atl.runners.ModelFormat;
+
+/**
+ * Synthetic models of any size conforming to a metamodel, so that every
+ * transformation can be measured on inputs from a thousand to a million
+ * elements without sample models of that size.
+ *
+ * Models are trees of instances of the concrete classes of the metamodel,
+ * grown breadth first through the containment references from the classes
+ * no other class contains, a new tree being started whenever one cannot grow
+ * any further. Every attribute is set, and each cross reference points to an
+ * element of the model, so that the rules of a transformation match across
+ * the whole model. The same size always gives the same model.
+ */
+final class ModelGenerator {
+    // elements added to each many-valued containment
+    private static final int FAN_OUT = 8;
+
+    private final List<EClass> concrete = new ArrayList<>();
+    private final List<EClass> roots = new ArrayList<>();
+    // concrete subtypes of each class, the class included
+    private final Map<EClass, List<EClass>> subtypes = new HashMap<>();
+
+    private ModelGenerator(Resource metamodel) {
+        metamodel.getAllContents().forEachRemaining(o -> {
+            if (o instanceof EPackage pkg && pkg.getNsURI() == null) {
+                throw new IllegalArgumentException("Package " + pkg.getName() + " has no nsURI");
+            }
+            if (o instanceof EClass c && !c.isAbstract() && !c.isInterface()) {
+                concrete.add(c);
+            }
+        });
+        if (concrete.isEmpty()) {
+            throw new IllegalArgumentException("No concrete class in " + metamodel.getURI());
+        }
+
+        // trees start from the classes that cannot be contained, the ones containing the most first
+        for (EClass c : concrete) {
+            boolean contained = false;
+            for (EClass container : concrete) {
+                for (EReference containment : container.getEAllContainments()) {
+                    contained |= containment.getEReferenceType().isSuperTypeOf(c);
+                }
+            }
+            if (!contained) {
+                roots.add(c);
+            }
+        }
+        if (roots.isEmpty()) {
+            roots.addAll(concrete);
+        }
+        roots.sort(Comparator.comparingInt((EClass c) -> -c.getEAllContainments().size()));
+    }
+
+    /**
+     * Writes a model of the input metamodel of a transformation with the given
+     * number of elements.
+     */
+    static Path write(Transformation transformation, int elements, ModelFormat format, Path file) throws IOException {
+        Resource metamodel = inputMetamodel(transformation);
+        ResourceSet resourceSet = new ResourceSetImpl();
+        resourceSet.getResourceFactoryRegistry().getExtensionToFactoryMap().put("*", new XMIResourceFactoryImpl());
+        Resource model = resourceSet.createResource(URI.createFileURI(file.toAbsolutePath().toString()));
+        new ModelGenerator(metamodel).generate(model, elements);
+        try (OutputStream out = Files.newOutputStream(file)) {
+            format.save(model, out);
+        } finally {
+            model.unload();
+        }
+        return file;
+    }
+
+    /**
+     * The input metamodel of a transformation, parsed with EMF alone rather
+     * than by the MetamodelRegistry of the runners, so that the benchmarks
+     * that do not run ATL do not need it. Packages without an nsURI, like
+     * the one of Grafcet, get their name as nsURI so that models can
+     * reference them, and primitive types without an instance class the one
+     * of the values generated for them, which EMF would reject otherwise.
+     */
+    static Resource inputMetamodel(Transformation transformation) throws IOException {
+        ResourceSet resourceSet = new ResourceSetImpl();
+        resourceSet.getResourceFactoryRegistry().getExtensionToFactoryMap().put("ecore", new EcoreResourceFactoryImpl());
+        Path path = Path.of(transformation.folderPath, transformation.inputMetamodels.get(0).path);
+        Resource metamodel = resourceSet.createResource(URI.createFileURI(path.toAbsolutePath().toString()));
+        metamodel.load(null);
+        metamodel.getAllContents().forEachRemaining(o -> {
+            if (o instanceof EPackage pkg && pkg.getNsURI() == null) {
+                pkg.setNsURI(pkg.getName());
+            }
+            if (o instanceof EDataType type && !(type instanceof EEnum) && type.getInstanceClass() == null) {
+                type.setInstanceClass(switch (type.getName().toLowerCase()) {
+                    case "string" -> String.class;
+                    case "int", "integer" -> Integer.class;
+                    case "long" -> Long.class;
+                    case "boolean" -> Boolean.class;
+                    case "double", "real" -> Double.class;
+                    case "float" -> Float.class;
+                    default -> null;
+                });
+            }
+        });
+        return metamodel;
+    }
+
+    private void generate(Resource model, int elements) {
+        List<EObject> all = new ArrayList<>(elements);
+        Deque<EObject> queue = new ArrayDeque<>();
+        while (all.size() < elements) {
+            EObject root = create(roots.get(model.getContents().size() % roots.size()), all);
+            model.getContents().add(root);
+            queue.add(root);
+            while (!queue.isEmpty() && all.size() < elements) {
+                addChildren(queue.poll(), all, queue, elements);
+            }
+            queue.clear();
+        }
+
+        Map<EClass, List<EObject>> byClass = new HashMap<>();
+        for (EObject object : all) {
+            byClass.computeIfAbsent(object.eClass(), c -> new ArrayList<>()).add(object);
+        }
+        for (int i = 0; i < all.size(); i++) {
+            link(all.get(i), i, byClass);
+        }
+    }
+
+    @SuppressWarnings("unchecked")
+    private void addChildren(EObject parent, List<EObject> all, Deque<EObject> queue, int elements) {
+        for (EReference containment : parent.eClass().getEAllContainments()) {
+            if (!containment.isChangeable() || containment.isDerived() || containment.isTransient()) continue;
+            List<EClass> types = subtypes(containment.getEReferenceType());
+            if (types.isEmpty()) continue;
+            int count = containment.isMany() ? FAN_OUT : 1;
+            for (int i = 0; i < count && all.size() < elements; i++) {
+                EObject child = create(types.get(all.size() % types.size()), all);
+                if (containment.isMany()) {
+                    ((List<EObject>) parent.eGet(containment)).add(child);
+                } else {
+                    parent.eSet(containment, child);
+                }
+                queue.add(child);
+            }
+        }
+    }
+
+    @SuppressWarnings("unchecked")
+    private void link(EObject object, int index, Map<EClass, List<EObject>> byClass) {
+        for (EReference reference : object.eClass().getEAllReferences()) {
+            if (reference.isContainment() || reference.isContainer() || !reference.isChangeable()
+                    || reference.isDerived() || reference.isTransient()) continue;
+            List<EClass> types = subtypes(reference.getEReferenceType());
+            if (types.isEmpty()) continue;
+            List<EObject> candidates = byClass.get(types.get(index % types.size()));
+            if (candidates == null) continue;
+            EObject target = candidates.get((index * 31 + 7) % candidates.size());
+
+            // references with an opposite may have been set from the other end already
+            if (reference.isMany()) {
+                List<EObject> targets = (List<EObject>) object.eGet(reference);
+                if (targets.isEmpty()) {
+                    targets.add(target);
+                }
+            } else if (!object.eIsSet(reference)) {
+                object.eSet(reference, target);
+            }
+        }
+    }
+
+    @SuppressWarnings("unchecked")
+    private EObject create(EClass eClass, List<EObject> all) {
+        EObject object = EcoreUtil.create(eClass);
+        int index = all.size();
+        for (EAttribute attribute : eClass.getEAllAttributes()) {
+            if (!attribute.isChangeable() || attribute.isDerived() || attribute.isTransient()) continue;
+            Object value = value(attribute, index);
+            if (value == null) continue;
+            if (attribute.isMany()) {
+                ((List<Object>) object.eGet(attribute)).add(value);
+            } else {
+                object.eSet(attribute, value);
+            }
+        }
+        all.add(object);
+        return object;
+    }
+
+    private static Object value(EAttribute attribute, int index) {
+        EDataType type = attribute.getEAttributeType();
+        if (type instanceof EEnum e) {
+            return e.getELiterals().isEmpty() ? null : e.getELiterals().get(index % e.getELiterals().size()).getInstance();
+        }
+        Class<?> c = type.getInstanceClass();
+        if (c == null) return null;
+        return switch (c.getSimpleName().toLowerCase()) {
+            case "string" -> attribute.getName() + index;
+            case "int", "integer" -> index % 1000;
+            case "long" -> (long) (index % 1000);
+            case "boolean" -> index % 2 == 0;
+            case "double", "real" -> index % 1000 / 10.0;
+            case "float" -> index % 1000 / 10.0f;
+            default -> null;
+        };
+    }
+
+    private List<EClass> subtypes(EClass type) {
+        return subtypes.computeIfAbsent(type, t -> concrete.stream().filter(t::isSuperTypeOf).toList());
+    }
+}
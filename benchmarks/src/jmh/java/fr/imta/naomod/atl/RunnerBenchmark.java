@@ -0,0 +1,73 @@
+package fr.imta.naomod.atl;
+
+import java.io.OutputStream;
+import java.nio.file.Path;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import fr.imta.naomod.atl.runners.ATLRunner;
+import fr.imta.naomod.atl.runners.EMFTVMRunner;
+import fr.imta.naomod.atl.runners.EMFVMRunner;
+import fr.imta.naomod.atl.runners.ModelFormat;
+import fr.imta.naomod.atl.runners.ModelInput;
+
+/**
+ * A bundled transformation applied by each runner to a synthetic input model,
+ * as for a request: the model is parsed from an XMI file and the outputs are
+ * serialized, to a stream discarding them. Execution environments are reused
+ * from one invocation to the other, like in the server.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3)
+@Measurement(iterations = 5)
+@Fork(1)
+public class RunnerBenchmark {
+    @Param({"Class2Relational", "Grafcet2PetriNet", "Make2Ant", "Ant2Maven", "XSLT2XQuery"})
+    public String transformation;
+
+    @Param({"EMFTVM", "EMFVM"})
+    public String compiler;
+
+    @Param({"1000", "10000", "100000", "1000000"})
+    public int elements;
+
+    private Path directory;
+    private ATLRunner runner;
+    private Transformation transfo;
+    private Map<String, ModelInput> inputs;
+
+    @Setup(Level.Trial)
+    public void setUp() throws Exception {
+        directory = BundledTransformations.copy(compiler);
+        transfo = BundledTransformations.get(directory, transformation, compiler);
+        runner = compiler.equals("EMFVM") ? new EMFVMRunner() : new EMFTVMRunner();
+        Path model = ModelGenerator.write(transfo, elements, ModelFormat.XMI, directory.resolve("input.xmi"));
+        inputs = Map.of(transfo.inputMetamodels.get(0).name, ModelInput.file(model.toString(), ModelFormat.XMI));
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws Exception {
+        BundledTransformations.delete(directory);
+    }
+
+    @Benchmark
+    public void applyTransformation() throws Exception {
+        runner.applyTransformation(inputs, transfo, name -> OutputStream.nullOutputStream(), ModelFormat.XMI);
+    }
+}